@@ -8,6 +8,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
@@ -15,8 +16,10 @@ import android.widget.ExpandableListView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import com.sleepyduck.macdnotification.data.BarStore;
 import com.sleepyduck.macdnotification.data.DataController;
 import com.sleepyduck.macdnotification.data.Group;
+import com.sleepyduck.macdnotification.data.NameCache;
 import com.sleepyduck.macdnotification.data.RetrieveDisplayName;
 import com.sleepyduck.macdnotification.data.RetrieveDisplayName.RetrieveDisplayNameListener;
 import com.sleepyduck.macdnotification.data.StockDataFetcher;
@@ -43,10 +46,7 @@ public class ActivityMACD extends Activity {
 
 		@Override
 		public void onCalculationComplete(Symbol symbol) {
-			if (!symbol.hasStockData() && symbol.doRetry())
-				mStockDataFetcher.execute(symbol);
-			else
-				mListAdapter.notifyDataSetChanged();
+			mListAdapter.notifyDataSetChanged();
 		}
 	};
 	private final StockDataFetcher mStockDataFetcher = new StockDataFetcher(mStockDataListener);
@@ -110,10 +110,19 @@ public class ActivityMACD extends Activity {
 		mListView.setAdapter(mListAdapter);
 		mListView.setOnChildClickListener(mChildClickListener);
 
+		mStockDataFetcher.setBarStore(BarStore.get(this));
+		mRetrieveDisplayName.setNameCache(NameCache.get(this));
 		if (!mDataController.load(savedInstanceState)) {
 			mDataController.loadFromFile(this);
-			List<Symbol> dataList = mDataController.getAllSymbols();
-			mStockDataFetcher.execute(dataList.toArray(new Symbol[dataList.size()]));
+			final List<Symbol> dataList = mDataController.getAllSymbols();
+			// Only the days after the stored ones are fetched, so they are loaded first
+			mDataController.loadStockData(this).addListener(new Runnable() {
+				@Override
+				public void run() {
+					mListAdapter.notifyDataSetChanged();
+					mStockDataFetcher.execute(dataList.toArray(new Symbol[dataList.size()]));
+				}
+			}, new Handler());
 			mRetrieveDisplayName.execute(dataList.toArray(new Symbol[dataList.size()]));
 		}
 
@@ -12,6 +12,7 @@ import android.widget.TextView;
 
 import com.sleepyduck.macdnotification.data.Backtrack;
 import com.sleepyduck.macdnotification.data.StockDataList;
+import com.sleepyduck.macdnotification.data.StockEnum;
 import com.sleepyduck.macdnotification.data.Symbol;
 
 public class ActivityStockView extends Activity {
@@ -41,14 +42,14 @@ public class ActivityStockView extends Activity {
 			}
 			if (mSymbol.hasStockData()) {
 				StockDataList data = mSymbol.getStockData();
-				value.setText("" + data.get(data.size()-1).Close);
+				value.setText("" + data.get(data.size()-1, StockEnum.Close));
 
 				ruleNo1SMA.setImageResource(mSymbol.isRuleNo1SMALessThanValue() ? R.drawable.ic_green : R.drawable.ic_red);
 				ruleNo1MACD.setImageResource(mSymbol.isRuleNo1HistogramPositive() ? R.drawable.ic_green : R.drawable.ic_red);
 				ruleNo1Stochastic.setImageResource(mSymbol.isRuleNo1StochasticPositive() ? R.drawable.ic_green : R.drawable.ic_red);
 
 				if (mSymbol.getRuleNo1Valuation() != null) {
-					ruleNo1Text.setText("Rule #1 (" + (int) (data.get(data.size()-1).Close / mSymbol.getRuleNo1Valuation() * 100.0f) + "%):");
+					ruleNo1Text.setText("Rule #1 (" + (int) (data.get(data.size()-1, StockEnum.Close) / mSymbol.getRuleNo1Valuation() * 100.0f) + "%):");
 				} else {
 					ruleNo1Text.setText("Rule #1:");
 				}
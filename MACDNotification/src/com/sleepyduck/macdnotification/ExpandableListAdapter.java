@@ -95,7 +95,7 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
 				dataText.setText(symbol.getDataText());
 				if (symbol.hasStockData()) {
 					StockDataList data = symbol.getStockData();
-					if (data.get(data.size()-1).get(StockEnum.MACD_12_26) >= 0f) {
+					if (data.get(data.size()-1, StockEnum.MACD_12_26) >= 0f) {
 						symbolText.setTextColor(Color.GREEN);
 					} else {
 						symbolText.setTextColor(Color.RED);
@@ -8,6 +8,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.sleepyduck.macdnotification.data.StockDataList;
+import com.sleepyduck.macdnotification.data.StockEnum;
 import com.sleepyduck.macdnotification.data.Symbol;
 
 public class RuleNo1Indicators extends LinearLayout {
@@ -96,7 +97,7 @@ public class RuleNo1Indicators extends LinearLayout {
 			if (mSymbol.getRuleNo1Valuation() != null) {
 				mText.setText("Rule #1 ("
 						+ toPercent(mSymbol.getRuleNo1Valuation(),
-								data.get(data.size()-1).Close) + "%):");
+								data.get(data.size()-1, StockEnum.Close)) + "%):");
 			} else {
 				mText.setText("Rule #1:");
 			}
@@ -1,7 +1,9 @@
 package com.sleepyduck.macdnotification;
 
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.app.AlarmManager;
 import android.app.NotificationManager;
@@ -15,7 +17,10 @@ import android.os.Handler;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
+import com.sleepyduck.macdnotification.data.BarStore;
 import com.sleepyduck.macdnotification.data.DataController;
+import com.sleepyduck.macdnotification.data.FetchBatch;
+import com.sleepyduck.macdnotification.data.FetchMetrics;
 import com.sleepyduck.macdnotification.data.StockDataFetcher;
 import com.sleepyduck.macdnotification.data.StockDataList;
 import com.sleepyduck.macdnotification.data.StockEnum;
@@ -24,23 +29,13 @@ import com.sleepyduck.macdnotification.data.Symbol;
 public class StartupBroadcastReceiver extends BroadcastReceiver {
 	public static final int ALARM_HOUR = 8;
 	private static final String LOG_TAG = StartupBroadcastReceiver.class.getSimpleName();
+	// Series from earlier alarms, kept for as long as the process lives so that a refresh only
+	// has to append the new days. Only accessed from the main thread.
+	private static final Map<String, StockDataList> sStockDataCache = new HashMap<String, StockDataList>();
 	private Context mContext;
 	private int mIdCounter = 0;
 
-	private StockDataFetcher.StockDataListener listener = new StockDataFetcher.StockDataListener() {
-
-		@Override
-		public void onMessage(String message) {}
-
-		@Override
-		public void onCalculationComplete(Symbol symbol) {
-			if (!symbol.hasStockData() && symbol.doRetry())
-				mStockDataFetcher.execute(symbol);
-			else
-				displayNotification(symbol);
-		}
-	};
-	private StockDataFetcher mStockDataFetcher = new StockDataFetcher(listener);
+	private StockDataFetcher mStockDataFetcher = new StockDataFetcher(null);
 
 	@Override
 	public void onReceive(final Context context, final Intent intent) {
@@ -81,8 +76,47 @@ public class StartupBroadcastReceiver extends BroadcastReceiver {
 	private void fetchStockData(Context context) {
 		DataController dataController = new DataController();
 		dataController.loadFromFile(context);
-		List<Symbol> dataList = dataController.getAllSymbols();
-		mStockDataFetcher.execute(dataList.toArray(new Symbol[dataList.size()]));
+		final List<Symbol> dataList = dataController.getAllSymbols();
+		for (Symbol symbol : dataList) {
+			StockDataList data = sStockDataCache.get(symbol.getName());
+			if (data != null)
+				symbol.setStockData(data);
+		}
+		mStockDataFetcher.setBarStore(BarStore.get(context));
+		// Only the days after the stored ones are fetched, so they are loaded first
+		dataController.loadStockData(context).addListener(new Runnable() {
+			@Override
+			public void run() {
+				fetchStockData(dataList);
+			}
+		}, new Handler());
+	}
+
+	private void fetchStockData(List<Symbol> dataList) {
+		// Only the metrics of this refresh are logged when it is done
+		FetchMetrics.get().reset();
+		final FetchBatch batch = mStockDataFetcher.fetch(dataList.toArray(new Symbol[dataList.size()]));
+		batch.addListener(new Runnable() {
+			@Override
+			public void run() {
+				onFetched(batch);
+			}
+		}, new Handler());
+	}
+
+	/**
+	 * Caches the series of the fetched symbols and notifies for them, once all of them are done
+	 */
+	private void onFetched(FetchBatch batch) {
+		for (Symbol symbol : batch.getSymbols()) {
+			if (symbol.hasStockData())
+				sStockDataCache.put(symbol.getName(), symbol.getStockData());
+		}
+		for (Symbol symbol : batch.getSymbols()) {
+			displayNotification(symbol);
+		}
+		Log.d(LOG_TAG, "Fetched " + batch.size() + " symbols");
+		FetchMetrics.get().log();
 	}
 
 	private boolean checkInternetConnection() {
@@ -127,23 +161,23 @@ public class StartupBroadcastReceiver extends BroadcastReceiver {
 	private void notifyMACD(Symbol symbol) {
 		String buyOrSell;
 		StockDataList data = symbol.getStockData();
-		if (data.get(data.size()-1).get(StockEnum.MACD_12_26) >= 0)
-			if (data.get(data.size()-1).get(StockEnum.MACD_12_26)
-					* data.get(data.size()-2).get(StockEnum.MACD_12_26) > 0)
+		if (data.get(data.size()-1, StockEnum.MACD_12_26) >= 0)
+			if (data.get(data.size()-1, StockEnum.MACD_12_26)
+					* data.get(data.size()-2, StockEnum.MACD_12_26) > 0)
 				buyOrSell = "Keep";
 			else
 				buyOrSell = "Buy";
-		else if (data.get(data.size()-1).get(StockEnum.MACD_12_26)
-				* data.get(data.size()-2).get(StockEnum.MACD_12_26) > 0)
+		else if (data.get(data.size()-1, StockEnum.MACD_12_26)
+				* data.get(data.size()-2, StockEnum.MACD_12_26) > 0)
 			buyOrSell = "Don't buy";
 		else
 			buyOrSell = "Sell";
 
 		// Calculate the value of MACD after three days with the same trend
 		if (buyOrSell.equals("Don't buy")) {
-			float trend = data.get(data.size()-1).get(StockEnum.MACD_12_26)
-					- data.get(data.size()-2).get(StockEnum.MACD_12_26);
-			float days = -data.get(data.size()-1).get(StockEnum.MACD_12_26) / trend;
+			float trend = data.get(data.size()-1, StockEnum.MACD_12_26)
+					- data.get(data.size()-2, StockEnum.MACD_12_26);
+			float days = -data.get(data.size()-1, StockEnum.MACD_12_26) / trend;
 			if (days > 0 && days < 4)
 				buyOrSell = "Possible buy in " + ((int) (days + 1f)) + " days for";
 		}
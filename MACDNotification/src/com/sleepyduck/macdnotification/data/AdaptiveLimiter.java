@@ -0,0 +1,195 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.sleepyduck.macdnotification.util.LatencyHistogram;
+
+/**
+ * Limits the requests to a host that are in flight at the same time, adapting the limit to how
+ * the host responds. The limit is raised by about one for each limit's worth of requests that
+ * succeed without the latency growing, and halved when the host throttles, fails or times out,
+ * the additive increase, multiplicative decrease of TCP. It never goes above
+ * {@link FetchExecutor#getConcurrency()}.
+ * <p>
+ * The requests can also be capped to a number per second, see
+ * {@link #setMaxRequestsPerSecond(double)}.
+ */
+public class AdaptiveLimiter {
+	private static final String LOG_TAG = AdaptiveLimiter.class.getSimpleName();
+	private static final double INITIAL_LIMIT = 2;
+	private static final double DECREASE_FACTOR = 0.5;
+	// Latency above the baseline times this is not healthy enough to raise the limit
+	private static final double LATENCY_TOLERANCE = 2;
+	// Weight of a new latency above the baseline, which lets the baseline follow a slower host
+	private static final double BASELINE_WEIGHT = 0.01;
+	// Latencies that the percentiles are taken over, the older ones weigh less
+	private static final long LATENCY_WINDOW = 500;
+	// Latencies needed before the percentiles are known
+	private static final long MIN_LATENCIES = 20;
+	// Hedges that may be sent for each request, and that may be saved up
+	private static final double HEDGE_BUDGET = 0.05;
+	private static final double MAX_HEDGE_TOKENS = 10;
+
+	private static final Map<String, AdaptiveLimiter> sLimiters = new HashMap<String, AdaptiveLimiter>();
+
+	private final String mHost;
+	private double mLimit = INITIAL_LIMIT;
+	private int mInFlight = 0;
+	private double mBaselineMillis = -1;
+	private long mLastDecrease = 0;
+	private long mIntervalMillis = 0;
+	private long mNextPermit = 0;
+	private double mHedgeTokens = 0;
+	private final LatencyHistogram mLatencies = new LatencyHistogram(LATENCY_WINDOW);
+
+	private AdaptiveLimiter(String host) {
+		mHost = host;
+	}
+
+	/**
+	 * Returns the limiter of the host, shared by all requests to it
+	 */
+	public static AdaptiveLimiter get(String host) {
+		synchronized (sLimiters) {
+			AdaptiveLimiter limiter = sLimiters.get(host);
+			if (limiter == null) {
+				limiter = new AdaptiveLimiter(host);
+				sLimiters.put(host, limiter);
+			}
+			return limiter;
+		}
+	}
+
+	/**
+	 * Sets the most requests that are started in one second, or 0 for no cap
+	 */
+	public synchronized void setMaxRequestsPerSecond(double requestsPerSecond) {
+		if (!(requestsPerSecond >= 0)) {
+			throw new IllegalArgumentException("Requests per second must not be negative: " + requestsPerSecond);
+		}
+		mIntervalMillis = requestsPerSecond > 0 ? (long) Math.ceil(1000 / requestsPerSecond) : 0;
+	}
+
+	/**
+	 * Returns the number of requests that may be in flight at the same time
+	 */
+	public synchronized int getLimit() {
+		return (int) Math.min(mLimit, FetchExecutor.getConcurrency());
+	}
+
+	/**
+	 * Waits until a request may be started. Each call must be followed by one of
+	 * {@link #onSuccess(long)}, {@link #onOverload()}, {@link #onHedged(long)} or
+	 * {@link #onDropped()} when the request is done.
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (mInFlight >= getLimit()) {
+			wait();
+		}
+		mInFlight++;
+		mHedgeTokens = Math.min(mHedgeTokens + HEDGE_BUDGET, MAX_HEDGE_TOKENS);
+		if (mIntervalMillis > 0) {
+			long now = System.currentTimeMillis();
+			final long permit = Math.max(now, mNextPermit);
+			mNextPermit = permit + mIntervalMillis;
+			// Waits without the lock, the permit is already taken
+			try {
+				while (now < permit) {
+					wait(permit - now);
+					now = System.currentTimeMillis();
+				}
+			} catch (InterruptedException e) {
+				release();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Starts a duplicate of a request that is slow, if the hedge budget allows it, like
+	 * {@link #acquire()}. Returns false without waiting otherwise. Hedges may go over the limit,
+	 * which the slow requests hold, but the budget only grows by {@value #HEDGE_BUDGET} for each
+	 * request that is started.
+	 */
+	public synchronized boolean tryAcquireHedge() {
+		// The pool of the SharedHttpClient has room for one hedge per request in flight
+		if (mHedgeTokens < 1 || mInFlight >= 2 * FetchExecutor.getConcurrency()
+				|| (mIntervalMillis > 0 && System.currentTimeMillis() < mNextPermit)) {
+			return false;
+		}
+		mHedgeTokens--;
+		mInFlight++;
+		if (mIntervalMillis > 0) {
+			mNextPermit = System.currentTimeMillis() + mIntervalMillis;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the latency that the percentile, 0 to 100, of the recent requests answered within,
+	 * or -1 if too few requests have succeeded to tell
+	 */
+	public long getLatencyPercentile(double percentile) {
+		if (mLatencies.getCount() < MIN_LATENCIES) {
+			return -1;
+		}
+		return mLatencies.getPercentile(percentile);
+	}
+
+	/**
+	 * The request succeeded after the latency. The limit is raised if the latency is healthy.
+	 */
+	public synchronized void onSuccess(long latencyMillis) {
+		release();
+		mLatencies.record(latencyMillis);
+		if (mBaselineMillis < 0 || latencyMillis < mBaselineMillis) {
+			mBaselineMillis = latencyMillis;
+		} else {
+			mBaselineMillis += (latencyMillis - mBaselineMillis) * BASELINE_WEIGHT;
+		}
+		if (latencyMillis <= mBaselineMillis * LATENCY_TOLERANCE && mLimit < FetchExecutor.getConcurrency()) {
+			mLimit = Math.min(mLimit + 1 / mLimit, FetchExecutor.getConcurrency());
+		}
+	}
+
+	/**
+	 * The host throttled the request, failed with a server error or timed out. The limit is
+	 * lowered.
+	 */
+	public synchronized void onOverload() {
+		release();
+		final long now = System.currentTimeMillis();
+		// Not lowered again within a round trip, so that the requests that were already in flight
+		// when the host became overloaded only halve the limit once
+		if (now - mLastDecrease >= mBaselineMillis) {
+			mLastDecrease = now;
+			mLimit = Math.max(1, Math.min(mLimit, FetchExecutor.getConcurrency()) * DECREASE_FACTOR);
+			Log.d(LOG_TAG, "Lowered the limit of " + mHost + " to " + getLimit());
+		}
+	}
+
+	/**
+	 * The request was aborted after the latency because a duplicate of it answered first. The
+	 * latency is counted in the percentiles, which would otherwise leave out the slowest requests,
+	 * but says nothing about the load of the host.
+	 */
+	public synchronized void onHedged(long latencyMillis) {
+		release();
+		mLatencies.record(latencyMillis);
+	}
+
+	/**
+	 * The request failed for a reason that says nothing about the load of the host
+	 */
+	public synchronized void onDropped() {
+		release();
+	}
+
+	private void release() {
+		mInFlight--;
+		notifyAll();
+	}
+}
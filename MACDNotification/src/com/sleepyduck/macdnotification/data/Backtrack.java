@@ -18,14 +18,14 @@ public class Backtrack {
 		int stocks = 0;
 		int tradeCountRuleNo1 = 0;
 		if (startBuy) {
-			Log.d("", "Buy " + dataList.get(0).Close);
-			stocks = (int) (initialCash / dataList.get(0).Close);
-			cashRuleNo1 -= stocks * dataList.get(0).Close;
+			Log.d("", "Buy " + dataList.get(0, StockEnum.Close));
+			stocks = (int) (initialCash / dataList.get(0, StockEnum.Close));
+			cashRuleNo1 -= stocks * dataList.get(0, StockEnum.Close);
 		}
 		for (int i = 0; i < dataList.size(); i++) {
 			if (stocks > 0) {
 				if (symbol.isRuleNo1Sell(i)) {
-					float sellVal = dataList.get(i).Close * (1f-spread/100f);
+					float sellVal = dataList.get(i, StockEnum.Close) * (1f-spread/100f);
 					Log.d("", "Sell " + sellVal);
 					sellVal = stocks * sellVal;
 					cashRuleNo1 += sellVal - Math.max(sellVal*minBrokeragePercent/100f, minBrokerage);
@@ -34,7 +34,7 @@ public class Backtrack {
 				}
 			} else {
 				if (symbol.isRuleNo1Buy(i)) {
-					float buyVal = dataList.get(i).Close * (1f + spread/100f);
+					float buyVal = dataList.get(i, StockEnum.Close) * (1f + spread/100f);
 					Log.d("", "Buy " + buyVal);
 					stocks = (int) (cashRuleNo1 / buyVal);
 					buyVal = stocks * buyVal;
@@ -44,8 +44,8 @@ public class Backtrack {
 			}
 		}
 		if (stocks > 0) {
-			Log.d("", "Sell " + dataList.get(dataList.size()-1).Close);
-			cashRuleNo1 += stocks * dataList.get(dataList.size()-1).Close;
+			Log.d("", "Sell " + dataList.get(dataList.size()-1, StockEnum.Close));
+			cashRuleNo1 += stocks * dataList.get(dataList.size()-1, StockEnum.Close);
 		}
 
 		// MACD
@@ -53,14 +53,14 @@ public class Backtrack {
 		stocks = 0;
 		int tradeCountMACD = 0;
 		if (startBuy) {
-			Log.d("", "MACD Buy " + dataList.get(0).Close);
-			stocks = (int) (initialCash / dataList.get(0).Close);
-			cashMACD -= stocks * dataList.get(0).Close;
+			Log.d("", "MACD Buy " + dataList.get(0, StockEnum.Close));
+			stocks = (int) (initialCash / dataList.get(0, StockEnum.Close));
+			cashMACD -= stocks * dataList.get(0, StockEnum.Close);
 		}
 		for (int i = 0; i < dataList.size(); i++) {
 			if (stocks > 0) {
-				if (dataList.get(i).get(StockEnum.MACD_12_26) < 0) {
-					float sellVal = dataList.get(i).Close * (1f-spread/100f);
+				if (dataList.get(i, StockEnum.MACD_12_26) < 0) {
+					float sellVal = dataList.get(i, StockEnum.Close) * (1f-spread/100f);
 					Log.d("", "MACD Sell " + sellVal);
 					sellVal = stocks * sellVal;
 					cashMACD += sellVal - Math.max(sellVal*minBrokeragePercent/100f, minBrokerage);
@@ -68,8 +68,8 @@ public class Backtrack {
 					tradeCountMACD++;
 				}
 			} else {
-				if (dataList.get(i).get(StockEnum.MACD_12_26) > 0) {
-					float buyVal = dataList.get(i).Close * (1f + spread/100f);
+				if (dataList.get(i, StockEnum.MACD_12_26) > 0) {
+					float buyVal = dataList.get(i, StockEnum.Close) * (1f + spread/100f);
 					Log.d("", "MACD Buy " + buyVal);
 					stocks = (int) (cashRuleNo1 / buyVal);
 					buyVal = stocks * buyVal;
@@ -79,15 +79,15 @@ public class Backtrack {
 			}
 		}
 		if (stocks > 0) {
-			Log.d("", "MACD Sell " + dataList.get(dataList.size()-1).Close);
-			cashMACD += stocks * dataList.get(dataList.size()-1).Close;
+			Log.d("", "MACD Sell " + dataList.get(dataList.size()-1, StockEnum.Close));
+			cashMACD += stocks * dataList.get(dataList.size()-1, StockEnum.Close);
 		}
 
 		// Buy & Hold
-		int initialStocks = (int) (initialCash / dataList.get(0).Close);
+		int initialStocks = (int) (initialCash / dataList.get(0, StockEnum.Close));
 		float cashBuyAndHold = initialCash
-				- initialStocks * dataList.get(0).Close
-				+ initialStocks * dataList.get(dataList.size()-1).Close;
+				- initialStocks * dataList.get(0, StockEnum.Close)
+				+ initialStocks * dataList.get(dataList.size()-1, StockEnum.Close);
 
 		return new Report(initialCash, cashBuyAndHold, cashRuleNo1, tradeCountRuleNo1, cashMACD, tradeCountMACD, dataList.size());
 	}
@@ -0,0 +1,277 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.sleepyduck.macdnotification.data.indicator.IndicatorRegistry;
+
+/**
+ * Stores the days of each symbol on disk, so that the indicators can be shown without waiting
+ * for the network and only the newest days have to be fetched. Each symbol has a file of fixed
+ * size records, oldest first, of the date, close, high and low of a day:
+ *
+ * <pre>
+ * int date (yyyyMMdd) | float close | float high | float low
+ * </pre>
+ *
+ * A file is read in one go into the columns of a {@link StockDataList}. New days are appended to
+ * the end of the file, and a file is only written in full when the history of the symbol has
+ * changed, or when it has grown well past the days the app uses and the oldest days are dropped.
+ * Each file has a lock of its own, so different symbols are read and written at the same time.
+ */
+public class BarStore {
+	private static final String LOG_TAG = BarStore.class.getSimpleName();
+	private static final String DIRECTORY = "bars";
+	private static final String SUFFIX = ".bars";
+	static final int RECORD_SIZE = 16;
+	// Days past the days kept that a file may grow by before it is compacted
+	private static final int COMPACT_SLACK_DAYS = 64;
+
+	private static BarStore sStore;
+
+	private final File mDirectory;
+	// The lock of each file by its name, shared by the reads and writes of the file
+	private final Map<String, Object> mLocks = new HashMap<String, Object>();
+
+	public BarStore(File directory) {
+		mDirectory = directory;
+	}
+
+	/**
+	 * Returns the store in the files directory of the app
+	 */
+	public static synchronized BarStore get(Context context) {
+		if (sStore == null) {
+			sStore = new BarStore(new File(context.getFilesDir(), DIRECTORY));
+		}
+		return sStore;
+	}
+
+	/**
+	 * Returns the file of the symbol
+	 */
+	File getFile(String symbol) {
+		return new File(mDirectory, getFileName(symbol) + SUFFIX);
+	}
+
+	private Object getLock(File file) {
+		synchronized (mLocks) {
+			Object lock = mLocks.get(file.getName());
+			if (lock == null) {
+				lock = new Object();
+				mLocks.put(file.getName(), lock);
+			}
+			return lock;
+		}
+	}
+
+	/**
+	 * Returns the name of the files of the symbol, without a suffix. Characters that are not safe
+	 * in file names, such as the ^ of an index, are written as %XX.
+	 */
+	static String getFileName(String symbol) {
+		final String key = symbol.toUpperCase(Locale.US);
+		final StringBuilder name = new StringBuilder(key.length());
+		for (int i = 0; i < key.length(); i++) {
+			final char c = key.charAt(i);
+			if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_') {
+				name.append(c);
+			} else {
+				name.append(String.format(Locale.US, "%%%02X", (int) c));
+			}
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Returns the stored days of the symbol, or null if there are none
+	 */
+	public StockDataList read(String symbol) {
+		final File file = getFile(symbol);
+		synchronized (getLock(file)) {
+			return read(file);
+		}
+	}
+
+	private static StockDataList read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			final byte[] bytes = new byte[(int) file.length()];
+			int read = 0;
+			while (read < bytes.length) {
+				final int count = in.read(bytes, read, bytes.length - read);
+				if (count < 0) {
+					break;
+				}
+				read += count;
+			}
+			// A record that was not written in full is ignored
+			final int days = read / RECORD_SIZE;
+			if (days == 0) {
+				return null;
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			final int[] dates = new int[days];
+			final float[] close = new float[days];
+			final float[] high = new float[days];
+			final float[] low = new float[days];
+			for (int i = 0; i < days; i++) {
+				dates[i] = buffer.getInt();
+				close[i] = buffer.getFloat();
+				high[i] = buffer.getFloat();
+				low[i] = buffer.getFloat();
+			}
+			return new StockDataList(IndicatorRegistry.getDefault(), dates, close, high, low, days);
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Replaces the stored days of the symbol with the days of the data
+	 */
+	public void write(String symbol, StockDataList data) {
+		final File file = getFile(symbol);
+		synchronized (getLock(file)) {
+			write(file, data, 0);
+		}
+	}
+
+	/**
+	 * Writes the days of the data from the index to a file next to the file, and renames it, so
+	 * that a failed write keeps the old days
+	 */
+	private void write(File file, StockDataList data, int from) {
+		if (!mDirectory.exists() && !mDirectory.mkdirs() && !mDirectory.exists()) {
+			Log.e(LOG_TAG, "Failed to create directory");
+			return;
+		}
+		final File tmp = new File(mDirectory, file.getName() + ".tmp");
+		RandomAccessFile out = null;
+		try {
+			out = new RandomAccessFile(tmp, "rw");
+			out.setLength(0);
+			write(out.getChannel(), data, from);
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				Log.e(LOG_TAG, "Failed to rename " + tmp);
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+			tmp.delete();
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Appends the days of the data that are dated after the last stored day of the symbol. If the
+	 * data has the last stored day, such as a day that was fetched before the market closed, its
+	 * stored prices are replaced. Once the file has more than maxDays days, and at least
+	 * {@value #COMPACT_SLACK_DAYS} more, it is written again with only the newest maxDays days.
+	 *
+	 * @return the number of days appended
+	 */
+	public int append(String symbol, StockDataList data, int maxDays) {
+		final File file = getFile(symbol);
+		synchronized (getLock(file)) {
+			if (!file.exists()) {
+				final int from = Math.max(0, data.size() - maxDays);
+				write(file, data, from);
+				return data.size() - from;
+			}
+			RandomAccessFile out = null;
+			try {
+				out = new RandomAccessFile(file, "rw");
+				final FileChannel channel = out.getChannel();
+				long size = channel.size() / RECORD_SIZE;
+				channel.truncate(size * RECORD_SIZE);
+				int lastDate = 0;
+				if (size > 0) {
+					final ByteBuffer record = ByteBuffer.allocate(4);
+					channel.read(record, (size - 1) * RECORD_SIZE);
+					lastDate = record.getInt(0);
+				}
+				int from = 0;
+				while (from < data.size() && data.getDate(from) < lastDate) {
+					from++;
+				}
+				int appended = data.size() - from;
+				if (appended > 0 && data.getDate(from) == lastDate) {
+					// The last day is written over
+					size--;
+					appended--;
+				}
+				channel.position(size * RECORD_SIZE);
+				write(channel, data, from);
+				size += data.size() - from;
+				out.close();
+				out = null;
+				if (size > maxDays + COMPACT_SLACK_DAYS) {
+					compact(file, maxDays);
+				}
+				return appended;
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "", e);
+				return 0;
+			} finally {
+				close(out);
+			}
+		}
+	}
+
+	/**
+	 * Writes the file again with only its newest days
+	 */
+	private void compact(File file, int maxDays) {
+		final StockDataList stored = read(file);
+		if (stored != null) {
+			write(file, stored, Math.max(0, stored.size() - maxDays));
+			Log.d(LOG_TAG, "Compacted " + file.getName() + " to " + Math.min(stored.size(), maxDays) + " days");
+		}
+	}
+
+	private static void write(FileChannel channel, StockDataList data, int from) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate((data.size() - from) * RECORD_SIZE);
+		for (int i = from; i < data.size(); i++) {
+			buffer.putInt(data.getDate(i));
+			buffer.putFloat(data.get(i, StockEnum.Close));
+			buffer.putFloat(data.get(i, StockEnum.High));
+			buffer.putFloat(data.get(i, StockEnum.Low));
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.sleepyduck.macdnotification.data.indicator.Indicator;
+
+/**
+ * Calculates the indicators of many series at once, on all cores, such as all stored symbols
+ * when they are loaded. Each series is a row that is calculated column by column on its own, and
+ * the rows are split into chunks that the worker threads take in turn, so a thread that is done
+ * with its rows early keeps taking the remaining ones instead of waiting for the others.
+ * <p>
+ * The worker threads are shared by all calculators and stopped after a while without work. The
+ * thread that calls a calculator takes chunks too.
+ */
+public class BatchCalculator {
+	private static final String LOG_TAG = BatchCalculator.class.getSimpleName();
+	// Chunks per thread, more chunks balance uneven rows better
+	private static final int CHUNKS_PER_THREAD = 8;
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	// Created when the first calculation needs more than one thread
+	private static ThreadPoolExecutor sExecutor = null;
+
+	private final StockDataList[] mRows;
+	private final int mThreads;
+
+	/**
+	 * Creates a calculator for the symbols that have stock data, using one thread per core
+	 */
+	public BatchCalculator(List<Symbol> symbols) {
+		this(symbols, Runtime.getRuntime().availableProcessors());
+	}
+
+	public BatchCalculator(List<Symbol> symbols, int threads) {
+		List<StockDataList> rows = new ArrayList<StockDataList>(symbols.size());
+		for (Symbol symbol : symbols) {
+			if (symbol.hasStockData()) {
+				rows.add(symbol.getStockData());
+			}
+		}
+		mRows = rows.toArray(new StockDataList[rows.size()]);
+		mThreads = Math.max(threads, 1);
+	}
+
+	public BatchCalculator(StockDataList[] rows, int threads) {
+		mRows = rows.clone();
+		mThreads = Math.max(threads, 1);
+	}
+
+	public int getRowCount() {
+		return mRows.length;
+	}
+
+	public StockDataList getRow(int i) {
+		return mRows[i];
+	}
+
+	/**
+	 * Calculates every indicator of every row. Indicators that are already calculated for a row
+	 * are not calculated again, so this can be called again after new indicators are registered.
+	 */
+	public void calculateIndicators() throws InterruptedException {
+		run(null);
+	}
+
+	/**
+	 * Calculates the indicator for every row and returns its column of each row, in row order.
+	 * Only the first size() values of each column are valid.
+	 */
+	public float[][] calculate(Indicator indicator) throws InterruptedException {
+		run(indicator);
+		final float[][] columns = new float[mRows.length][];
+		for (int i = 0; i < mRows.length; i++) {
+			columns[i] = mRows[i].getColumn(indicator);
+		}
+		return columns;
+	}
+
+	private void run(final Indicator indicator) throws InterruptedException {
+		final long start = System.currentTimeMillis();
+		final int threads = Math.min(mThreads, mRows.length);
+		if (threads <= 1) {
+			calculate(indicator, 0, mRows.length);
+		} else {
+			final int chunk = Math.max(1, mRows.length / (threads * CHUNKS_PER_THREAD));
+			final AtomicInteger next = new AtomicInteger(0);
+			final Runnable worker = new Runnable() {
+				@Override
+				public void run() {
+					int from;
+					while ((from = next.getAndAdd(chunk)) < mRows.length) {
+						calculate(indicator, from, Math.min(from + chunk, mRows.length));
+					}
+				}
+			};
+			final List<Future<?>> futures = new ArrayList<Future<?>>(threads - 1);
+			try {
+				final ThreadPoolExecutor executor = getExecutor(threads - 1);
+				for (int t = 1; t < threads; t++) {
+					futures.add(executor.submit(worker));
+				}
+				worker.run();
+				for (Future<?> future : futures) {
+					// A worker that has not started yet would find no rows left
+					if (!future.cancel(false)) {
+						future.get();
+					}
+				}
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			} finally {
+				for (Future<?> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+		Log.d(LOG_TAG, "Calculated " + (indicator != null ? indicator : "all indicators") + " for "
+				+ mRows.length + " series in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Returns the shared pool, with room for at least the number of threads
+	 */
+	private static synchronized ThreadPoolExecutor getExecutor(int threads) {
+		if (sExecutor == null) {
+			sExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger mCount = new AtomicInteger(0);
+
+						@Override
+						public Thread newThread(Runnable r) {
+							final Thread thread = new Thread(r, "Calculate #" + mCount.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			sExecutor.allowCoreThreadTimeOut(true);
+		} else if (threads > sExecutor.getMaximumPoolSize()) {
+			sExecutor.setMaximumPoolSize(threads);
+			sExecutor.setCorePoolSize(threads);
+		}
+		return sExecutor;
+	}
+
+	private void calculate(Indicator indicator, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (indicator != null) {
+				mRows[i].getColumn(indicator);
+			} else {
+				mRows[i].calculateIndicators();
+			}
+		}
+	}
+}
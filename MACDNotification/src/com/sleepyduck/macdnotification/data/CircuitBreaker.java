@@ -0,0 +1,86 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * Stops requests to a host that keeps failing, so that a source that is down fails fast instead
+ * of every symbol waiting for its own time out. After {@link #FAILURE_THRESHOLD} failures in a
+ * row the breaker opens, and requests are refused for {@link #OPEN_MILLIS}. The first request
+ * after that is let through as a trial; if it succeeds the breaker closes again, otherwise it
+ * stays open for another period.
+ */
+public class CircuitBreaker {
+	private static final String LOG_TAG = CircuitBreaker.class.getSimpleName();
+	public static final int FAILURE_THRESHOLD = 5;
+	public static final long OPEN_MILLIS = 60 * 1000;
+
+	private static final Map<String, CircuitBreaker> sBreakers = new HashMap<String, CircuitBreaker>();
+
+	private final String mHost;
+	private int mFailures = 0;
+	// Time until which requests are refused, 0 if the breaker is closed
+	private long mOpenUntil = 0;
+	private boolean mTrial = false;
+
+	private CircuitBreaker(String host) {
+		mHost = host;
+	}
+
+	/**
+	 * Returns the breaker of the host, shared by all requests to it
+	 */
+	public static CircuitBreaker get(String host) {
+		synchronized (sBreakers) {
+			CircuitBreaker breaker = sBreakers.get(host);
+			if (breaker == null) {
+				breaker = new CircuitBreaker(host);
+				sBreakers.put(host, breaker);
+			}
+			return breaker;
+		}
+	}
+
+	/**
+	 * Returns true if a request may be made. When the open period has passed, only one request
+	 * is let through until it has succeeded or failed.
+	 */
+	public synchronized boolean allowRequest() {
+		if (mOpenUntil == 0) {
+			return true;
+		}
+		if (mTrial || System.currentTimeMillis() < mOpenUntil) {
+			return false;
+		}
+		mTrial = true;
+		return true;
+	}
+
+	/**
+	 * Returns true if the next request would be let through, which is not the case while the
+	 * breaker is open or while its trial request is in flight
+	 */
+	public synchronized boolean isAvailable() {
+		return mOpenUntil == 0 || (!mTrial && System.currentTimeMillis() >= mOpenUntil);
+	}
+
+	public synchronized void onSuccess() {
+		if (mOpenUntil != 0) {
+			Log.d(LOG_TAG, "Closed for " + mHost);
+		}
+		mFailures = 0;
+		mOpenUntil = 0;
+		mTrial = false;
+	}
+
+	public synchronized void onFailure() {
+		mFailures++;
+		if (mTrial || (mOpenUntil == 0 && mFailures >= FAILURE_THRESHOLD)) {
+			Log.d(LOG_TAG, "Opened for " + mHost + " after " + mFailures + " failures");
+			mOpenUntil = System.currentTimeMillis() + OPEN_MILLIS;
+			mTrial = false;
+		}
+	}
+}
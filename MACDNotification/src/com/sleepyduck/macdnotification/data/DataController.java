@@ -76,6 +76,50 @@ public class DataController {
 		return symbols;
 	}
 
+	/**
+	 * Sets the stored days of the symbols that have no stock data, see {@link BarStore}, and
+	 * calculates their indicators with a {@link BatchCalculator}. The files are read on the
+	 * {@link FetchExecutor}, so that a large portfolio does not hold up the main thread.
+	 *
+	 * @return a future that is done with the symbols when their days are loaded
+	 */
+	public FetchFuture<List<Symbol>> loadStockData(final Context context) {
+		final List<Symbol> symbols = getAllSymbols();
+		final FetchFuture<List<Symbol>> future = new FetchFuture<List<Symbol>>();
+		FetchExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					loadStockData(BarStore.get(context), symbols);
+				} finally {
+					future.set(symbols);
+				}
+			}
+		});
+		return future;
+	}
+
+	private static void loadStockData(BarStore barStore, List<Symbol> symbols) {
+		final long start = System.currentTimeMillis();
+		final List<Symbol> loaded = new ArrayList<Symbol>();
+		for (Symbol symbol : symbols) {
+			if (!symbol.hasStockData()) {
+				StockDataList data = barStore.read(symbol.getName());
+				if (data != null) {
+					symbol.setStockData(data);
+					loaded.add(symbol);
+				}
+			}
+		}
+		Log.d(LOG_TAG, "Loaded " + loaded.size() + " symbols in " + (System.currentTimeMillis() - start) + " ms");
+		// Calculated here on all cores, instead of one symbol at a time when the list first shows it
+		try {
+			new BatchCalculator(loaded).calculateIndicators();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	public void loadFromFile(Context context) {
 		FileInputStream in = null;
 		try {
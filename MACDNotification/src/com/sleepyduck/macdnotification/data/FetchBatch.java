@@ -0,0 +1,67 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The futures of the symbols of one call to {@link StockDataFetcher#fetch(Symbol...)}. The batch
+ * is itself a future of all the symbols, that is done when the future of every symbol is done,
+ * whether it was fetched, given up on or cancelled. Cancelling the batch cancels the futures of
+ * the symbols that are not done.
+ */
+public class FetchBatch extends FetchFuture<List<Symbol>> {
+	private final List<Symbol> mSymbols;
+	private final List<FetchFuture<Symbol>> mFutures;
+	private final AtomicInteger mRemaining;
+
+	FetchBatch(Symbol[] symbols, List<FetchFuture<Symbol>> futures) {
+		mSymbols = Collections.unmodifiableList(Arrays.asList(symbols.clone()));
+		mFutures = Collections.unmodifiableList(new ArrayList<FetchFuture<Symbol>>(futures));
+		mRemaining = new AtomicInteger(futures.size());
+		if (futures.isEmpty()) {
+			set(mSymbols);
+		}
+		for (FetchFuture<Symbol> future : mFutures) {
+			future.addListener(new Runnable() {
+				@Override
+				public void run() {
+					if (mRemaining.decrementAndGet() == 0) {
+						set(mSymbols);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the symbols, in the order they were given
+	 */
+	public List<Symbol> getSymbols() {
+		return mSymbols;
+	}
+
+	/**
+	 * Returns the future of each symbol, in the order they were given
+	 */
+	public List<FetchFuture<Symbol>> getFutures() {
+		return mFutures;
+	}
+
+	public FetchFuture<Symbol> getFuture(int i) {
+		return mFutures.get(i);
+	}
+
+	public int size() {
+		return mFutures.size();
+	}
+
+	@Override
+	protected void onCancelled() {
+		for (FetchFuture<Symbol> future : mFutures) {
+			future.cancel(false);
+		}
+	}
+}
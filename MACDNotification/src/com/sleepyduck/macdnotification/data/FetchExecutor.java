@@ -0,0 +1,242 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * The worker threads shared by {@link StockDataFetcher} and {@link RetrieveDisplayName}. Each
+ * symbol is queued as a task and run by a fixed number of threads, see
+ * {@link #setConcurrency(int)}, so the number of threads stays the same however many symbols are
+ * fetched or retried. Idle threads are stopped after a while.
+ * <p>
+ * On runtimes with virtual threads, Java 21 and later but not Android, each task can instead get
+ * a virtual thread of its own, see {@link #setVirtualThreads(boolean)}. This is also enabled by
+ * the system property {@value #VIRTUAL_THREADS_PROPERTY}. The requests in flight are then no
+ * longer limited by the threads, but by a separate ceiling, see
+ * {@link #setVirtualConcurrency(int)}.
+ */
+public final class FetchExecutor {
+	private static final String LOG_TAG = FetchExecutor.class.getSimpleName();
+	public static final String VIRTUAL_THREADS_PROPERTY = "macdnotification.virtualThreads";
+	public static final String VIRTUAL_CONCURRENCY_PROPERTY = "macdnotification.virtualConcurrency";
+	public static final int DEFAULT_CONCURRENCY = 6;
+	public static final int DEFAULT_VIRTUAL_CONCURRENCY = 64;
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(DEFAULT_CONCURRENCY,
+			DEFAULT_CONCURRENCY, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger mCount = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "Fetch #" + mCount.incrementAndGet());
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	// Null unless virtual threads are used
+	private static volatile ExecutorService sVirtualExecutor = null;
+	private static volatile int sVirtualConcurrency = Math.max(1,
+			Integer.getInteger(VIRTUAL_CONCURRENCY_PROPERTY, DEFAULT_VIRTUAL_CONCURRENCY));
+	// Queues delayed tasks, created when the first one is scheduled
+	private static ScheduledExecutorService sTimer = null;
+	// Runs the tasks that may not wait for the pool, created when the first one is started
+	private static ThreadPoolExecutor sDirectExecutor = null;
+
+	static {
+		sExecutor.allowCoreThreadTimeOut(true);
+		if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+			setVirtualThreads(true);
+		}
+	}
+
+	private FetchExecutor() {
+	}
+
+	/**
+	 * Queues the task, to be run when one of the threads is free, or starts it on a virtual
+	 * thread of its own
+	 */
+	public static void execute(Runnable task) {
+		final ExecutorService virtualExecutor = sVirtualExecutor;
+		if (virtualExecutor != null) {
+			virtualExecutor.execute(task);
+		} else {
+			sExecutor.execute(task);
+		}
+	}
+
+	/**
+	 * Queues the task after the delay, see {@link #execute(Runnable)}. The delay is waited out
+	 * without holding one of the threads.
+	 */
+	public static void schedule(final Runnable task, long delayMillis) {
+		getTimer().schedule(new Runnable() {
+			@Override
+			public void run() {
+				execute(task);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts the task after the delay on a thread of its own, without waiting for a free thread of
+	 * the pool. Only for tasks that are few and limited by other means, such as hedged requests.
+	 *
+	 * @return a future that keeps the task from starting if it is cancelled
+	 */
+	public static ScheduledFuture<?> scheduleDirect(final Runnable task, long delayMillis) {
+		return getTimer().schedule(new Runnable() {
+			@Override
+			public void run() {
+				final ExecutorService virtualExecutor = sVirtualExecutor;
+				if (virtualExecutor != null) {
+					virtualExecutor.execute(task);
+				} else {
+					getDirectExecutor().execute(task);
+				}
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the task on the timer thread after the delay. The task must be short, such as aborting
+	 * a request that is past its deadline.
+	 *
+	 * @return a future that keeps the task from running if it is cancelled
+	 */
+	public static ScheduledFuture<?> runOnTimer(Runnable task, long delayMillis) {
+		return getTimer().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ThreadPoolExecutor getDirectExecutor() {
+		if (sDirectExecutor == null) {
+			sDirectExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger mCount = new AtomicInteger(0);
+
+						@Override
+						public Thread newThread(Runnable r) {
+							final Thread thread = new Thread(r, "Fetch direct #" + mCount.incrementAndGet());
+							thread.setPriority(Thread.MIN_PRIORITY);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return sDirectExecutor;
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (sTimer == null) {
+			sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "Fetch timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sTimer;
+	}
+
+	/**
+	 * Runs each task on a virtual thread of its own instead of the pool, without a limit on the
+	 * number of tasks running at the same time. Returns true if virtual threads are used, which
+	 * is only the case if the runtime has them.
+	 */
+	public static synchronized boolean setVirtualThreads(boolean enabled) {
+		if (enabled && sVirtualExecutor == null) {
+			sVirtualExecutor = newVirtualThreadExecutor();
+		} else if (!enabled && sVirtualExecutor != null) {
+			// Tasks that are already started run to completion
+			sVirtualExecutor.shutdown();
+			sVirtualExecutor = null;
+		}
+		return sVirtualExecutor != null;
+	}
+
+	public static boolean isVirtualThreads() {
+		return sVirtualExecutor != null;
+	}
+
+	/**
+	 * Returns Executors.newVirtualThreadPerTaskExecutor(), or null if the runtime does not have it
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException e) {
+			Log.d(LOG_TAG, "Virtual threads are not supported, using the pool");
+		} catch (IllegalAccessException e) {
+			Log.e(LOG_TAG, "", e);
+		} catch (InvocationTargetException e) {
+			// Thrown if virtual threads are a preview feature that is not enabled
+			Log.e(LOG_TAG, "", e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of requests that may be in flight at the same time, which the
+	 * {@link AdaptiveLimiter} and the {@link SharedHttpClient} are sized by. This is the number of
+	 * threads of the pool, or the ceiling of {@link #setVirtualConcurrency(int)} if virtual threads
+	 * are used.
+	 */
+	public static int getConcurrency() {
+		return sVirtualExecutor != null ? sVirtualConcurrency : sExecutor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Sets the number of requests that may be in flight at the same time when virtual threads are
+	 * used, {@value #DEFAULT_VIRTUAL_CONCURRENCY} unless set by the system property
+	 * {@value #VIRTUAL_CONCURRENCY_PROPERTY}. The tasks are not limited, those above the ceiling
+	 * wait for the {@link AdaptiveLimiter} without holding a thread of the pool.
+	 */
+	public static void setVirtualConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+		}
+		sVirtualConcurrency = concurrency;
+	}
+
+	/**
+	 * Sets the number of tasks that can run at the same time. Running tasks are not interrupted
+	 * when the concurrency is lowered.
+	 */
+	public static synchronized void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+		}
+		if (concurrency > sExecutor.getMaximumPoolSize()) {
+			sExecutor.setMaximumPoolSize(concurrency);
+			sExecutor.setCorePoolSize(concurrency);
+		} else {
+			sExecutor.setCorePoolSize(concurrency);
+			sExecutor.setMaximumPoolSize(concurrency);
+		}
+	}
+
+	/**
+	 * Returns the number of tasks that are queued but not started yet
+	 */
+	public static int getQueueSize() {
+		return sExecutor.getQueue().size();
+	}
+}
@@ -0,0 +1,143 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.os.Handler;
+
+/**
+ * The result of a fetch that completes later, see {@link StockDataFetcher#fetch(Symbol...)}.
+ * Listeners can be added that are called when the future is done, also when it is cancelled, so
+ * that results can be combined without blocking a thread on {@link #get()}.
+ */
+public class FetchFuture<V> implements Future<V> {
+	private final List<Runnable> mListeners = new ArrayList<Runnable>();
+	private boolean mDone = false;
+	private boolean mCancelled = false;
+	private V mValue;
+
+	/**
+	 * Cancels the future if it is not done. Queued work for it is not started, but a request that
+	 * is already running is not interrupted.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (mDone) {
+				return false;
+			}
+			mCancelled = true;
+			mDone = true;
+			notifyAll();
+		}
+		onCancelled();
+		runListeners();
+		return true;
+	}
+
+	/**
+	 * Called when the future is cancelled, before the listeners
+	 */
+	protected void onCancelled() {
+	}
+
+	/**
+	 * Completes the future with the value, unless it is already done
+	 *
+	 * @return true if the future was completed
+	 */
+	boolean set(V value) {
+		synchronized (this) {
+			if (mDone) {
+				return false;
+			}
+			mValue = value;
+			mDone = true;
+			notifyAll();
+		}
+		runListeners();
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return mCancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return mDone;
+	}
+
+	@Override
+	public synchronized V get() throws InterruptedException, ExecutionException {
+		while (!mDone) {
+			wait();
+		}
+		return getValue();
+	}
+
+	@Override
+	public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException {
+		final long end = System.currentTimeMillis() + unit.toMillis(timeout);
+		long remaining;
+		while (!mDone) {
+			remaining = end - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			wait(remaining);
+		}
+		return getValue();
+	}
+
+	private V getValue() {
+		if (mCancelled) {
+			throw new CancellationException();
+		}
+		return mValue;
+	}
+
+	/**
+	 * Adds a listener that is called when the future is done, on the thread that completes it,
+	 * or at once if it is already done
+	 */
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (!mDone) {
+				mListeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Adds a listener that is posted to the handler when the future is done
+	 */
+	public void addListener(final Runnable listener, final Handler handler) {
+		addListener(new Runnable() {
+			@Override
+			public void run() {
+				handler.post(listener);
+			}
+		});
+	}
+
+	private void runListeners() {
+		final Runnable[] listeners;
+		synchronized (this) {
+			listeners = mListeners.toArray(new Runnable[mListeners.size()]);
+			mListeners.clear();
+		}
+		for (Runnable listener : listeners) {
+			listener.run();
+		}
+	}
+}
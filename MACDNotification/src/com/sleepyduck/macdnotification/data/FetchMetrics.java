@@ -0,0 +1,221 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.util.Log;
+
+import com.sleepyduck.macdnotification.util.LatencyHistogram;
+
+/**
+ * The metrics of the fetch pipeline, shared by all fetches: a {@link LatencyHistogram} of the
+ * time spent in each {@link Phase}, and {@link Counter}s per symbol. They are kept until
+ * {@link #reset()}, and can be dumped in the Prometheus text format to be logged or scraped,
+ * so that the phase a slow refresh spent its time in can be seen.
+ */
+public final class FetchMetrics {
+	private static final String LOG_TAG = FetchMetrics.class.getSimpleName();
+	private static final String PREFIX = "macdnotification_fetch_";
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.95, 0.99 };
+	private static final long NANOS_PER_MICRO = 1000;
+	private static final double MICROS_PER_SECOND = 1000 * 1000;
+
+	private static final FetchMetrics sMetrics = new FetchMetrics();
+
+	public enum Phase {
+		/** From the request being queued until a thread starts it */
+		QUEUE_WAIT,
+		/** From sending the request until the headers of the response are received */
+		CONNECT,
+		/** Waiting for the bytes of the response while it is parsed */
+		DOWNLOAD,
+		/** Parsing the response, without the time waiting for its bytes */
+		PARSE,
+		/** Adding the days to the stock data and calculating the indicators of new days */
+		CALCULATION,
+		/** Writing the days to the {@link BarStore} */
+		STORE,
+		/** From a symbol being done until the listener is called on the thread of the fetcher */
+		DELIVERY;
+
+		private final String mLabel = name().toLowerCase(Locale.US);
+	}
+
+	public enum Counter {
+		/** Bytes of the responses, shared evenly by the symbols of each request */
+		BYTES,
+		/** Requests sent for the symbol, including retries and hedges */
+		REQUESTS,
+		/** Requests that were sent again after a backoff */
+		RETRIES,
+		/** Requests that did not give valid data for the symbol */
+		FAILURES,
+		/** Requests that were aborted at their deadline */
+		TIMEOUTS,
+		/** Duplicates sent for a slow request */
+		HEDGES;
+
+		private final String mLabel = name().toLowerCase(Locale.US);
+	}
+
+	private final LatencyHistogram[] mHistograms = new LatencyHistogram[Phase.values().length];
+	// The counters of each symbol by its key, in the order they are dumped
+	private final Map<String, long[]> mCounters = new TreeMap<String, long[]>();
+	private final long[] mTotals = new long[Counter.values().length];
+
+	private FetchMetrics() {
+		for (int i = 0; i < mHistograms.length; i++) {
+			mHistograms[i] = new LatencyHistogram();
+		}
+	}
+
+	public static FetchMetrics get() {
+		return sMetrics;
+	}
+
+	/**
+	 * Records the time spent in the phase, counted in microseconds
+	 */
+	public void record(Phase phase, long nanos) {
+		mHistograms[phase.ordinal()].record(nanos / NANOS_PER_MICRO);
+	}
+
+	/**
+	 * Returns the times of the phase, in microseconds
+	 */
+	public LatencyHistogram getHistogram(Phase phase) {
+		return mHistograms[phase.ordinal()];
+	}
+
+	/**
+	 * Adds to the counter of each of the symbols. An amount that is not divisible by the number
+	 * of symbols is rounded down for each.
+	 */
+	public void add(Counter counter, String[] symbols, long amount) {
+		final long share = amount / Math.max(symbols.length, 1);
+		synchronized (mCounters) {
+			for (String symbol : symbols) {
+				getCounters(symbol)[counter.ordinal()] += share;
+			}
+			mTotals[counter.ordinal()] += share * symbols.length;
+		}
+	}
+
+	/**
+	 * Adds one to the counter of the symbol
+	 */
+	public void increment(Counter counter, String symbol) {
+		synchronized (mCounters) {
+			getCounters(symbol)[counter.ordinal()]++;
+			mTotals[counter.ordinal()]++;
+		}
+	}
+
+	private long[] getCounters(String symbol) {
+		final String key = StockDataFetcher.getKey(symbol);
+		long[] counters = mCounters.get(key);
+		if (counters == null) {
+			counters = new long[Counter.values().length];
+			mCounters.put(key, counters);
+		}
+		return counters;
+	}
+
+	/**
+	 * Returns the count of the symbol
+	 */
+	public long getCount(Counter counter, String symbol) {
+		synchronized (mCounters) {
+			final long[] counters = mCounters.get(StockDataFetcher.getKey(symbol));
+			return counters != null ? counters[counter.ordinal()] : 0;
+		}
+	}
+
+	/**
+	 * Returns the count of all symbols
+	 */
+	public long getCount(Counter counter) {
+		synchronized (mCounters) {
+			return mTotals[counter.ordinal()];
+		}
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : mHistograms) {
+			histogram.reset();
+		}
+		synchronized (mCounters) {
+			mCounters.clear();
+			for (int i = 0; i < mTotals.length; i++) {
+				mTotals[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the metrics in the Prometheus text format: a summary of the seconds of each phase,
+	 * and each counter in total and per symbol
+	 */
+	public String dump() {
+		final StringBuilder sb = new StringBuilder();
+		final String phaseName = PREFIX + "phase_seconds";
+		sb.append("# TYPE ").append(phaseName).append(" summary\n");
+		for (Phase phase : Phase.values()) {
+			final LatencyHistogram histogram = getHistogram(phase);
+			// Read under the lock of the histogram, so that the lines agree with each other
+			synchronized (histogram) {
+				for (double quantile : QUANTILES) {
+					sb.append(phaseName).append("{phase=\"").append(phase.mLabel).append("\",quantile=\"")
+							.append(quantile).append("\"} ").append(toSeconds(histogram.getPercentile(quantile * 100)))
+							.append('\n');
+				}
+				sb.append(phaseName).append("_sum{phase=\"").append(phase.mLabel).append("\"} ")
+						.append(toSeconds(histogram.getSum())).append('\n');
+				sb.append(phaseName).append("_count{phase=\"").append(phase.mLabel).append("\"} ")
+						.append(histogram.getCount()).append('\n');
+			}
+		}
+		synchronized (mCounters) {
+			for (Counter counter : Counter.values()) {
+				final String name = PREFIX + counter.mLabel + "_total";
+				sb.append("# TYPE ").append(name).append(" counter\n");
+				sb.append(name).append(' ').append(mTotals[counter.ordinal()]).append('\n');
+				for (Map.Entry<String, long[]> entry : mCounters.entrySet()) {
+					final long count = entry.getValue()[counter.ordinal()];
+					if (count != 0) {
+						sb.append(name).append("{symbol=\"").append(escape(entry.getKey())).append("\"} ")
+								.append(count).append('\n');
+					}
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Logs the {@link #dump()}, one line at a time
+	 */
+	public void log() {
+		final BufferedReader reader = new BufferedReader(new StringReader(dump()));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Log.d(LOG_TAG, line);
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+		}
+	}
+
+	private static String toSeconds(long micros) {
+		return String.format(Locale.US, "%.6f", micros / MICROS_PER_SECOND);
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
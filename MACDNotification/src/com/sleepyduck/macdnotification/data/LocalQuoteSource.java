@@ -0,0 +1,182 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * Reads the days and names from files in a directory, without the network. The days of a symbol
+ * are read from a file in the format of {@link BarStore}, SYMBOL.bars, or from a CSV file,
+ * SYMBOL.csv, with one day per line, oldest or newest first:
+ *
+ * <pre>
+ * Date,Close,High,Low
+ * 2014-03-14,102.5,103.0,101.25
+ * </pre>
+ *
+ * The dates may also be written as yyyyMMdd, and lines that do not start with a date, such as a
+ * header, are skipped. The display names are read from names.csv, with a symbol and a name on
+ * each line.
+ */
+public class LocalQuoteSource implements QuoteSource {
+	private static final String LOG_TAG = LocalQuoteSource.class.getSimpleName();
+	private static final String NAMES_FILE = "names.csv";
+
+	private final File mDirectory;
+	private final BarStore mBarStore;
+	// Read when the first name is fetched
+	private Map<String, String> mNames = null;
+
+	public LocalQuoteSource(File directory) {
+		mDirectory = directory;
+		mBarStore = new BarStore(directory);
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return mDirectory.isDirectory();
+	}
+
+	@Override
+	public Map<String, StockDataList> fetchHistory(String[] symbols, int startDate, int endDate) {
+		if (!isAvailable()) {
+			Log.e(LOG_TAG, mDirectory + " is not a directory");
+			return null;
+		}
+		final Map<String, StockDataList> dataMap = new HashMap<String, StockDataList>();
+		for (String symbol : symbols) {
+			StockDataList data = mBarStore.read(symbol);
+			if (data == null) {
+				data = readCsv(new File(mDirectory, BarStore.getFileName(symbol) + ".csv"));
+			}
+			if (data != null) {
+				dataMap.put(StockDataFetcher.getKey(symbol), filter(data, startDate, endDate));
+			}
+		}
+		return dataMap;
+	}
+
+	@Override
+	public synchronized Map<String, String> fetchNames(String[] symbols) {
+		if (mNames == null) {
+			mNames = readNames(new File(mDirectory, NAMES_FILE));
+		}
+		final Map<String, String> names = new HashMap<String, String>();
+		for (String symbol : symbols) {
+			final String key = StockDataFetcher.getKey(symbol);
+			final String name = mNames.get(key);
+			names.put(key, name != null ? name : "");
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the days of the data from the start date to the end date
+	 */
+	private static StockDataList filter(StockDataList data, int startDate, int endDate) {
+		final StockDataList filtered = new StockDataList(data.size());
+		for (int i = 0; i < data.size(); i++) {
+			final int date = data.getDate(i);
+			if (date >= startDate && date <= endDate) {
+				filtered.add(date, data.get(i, StockEnum.Close), data.get(i, StockEnum.High),
+						data.get(i, StockEnum.Low));
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Returns the days of the CSV file, oldest first, or null if there is no such file
+	 */
+	private static StockDataList readCsv(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			final StockDataList data = new StockDataList();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] values = line.split(",");
+				final int date = values.length >= 4 ? parseDate(values[0].trim()) : -1;
+				if (date < 0) {
+					continue;
+				}
+				try {
+					data.add(date, Float.parseFloat(values[1].trim()), Float.parseFloat(values[2].trim()),
+							Float.parseFloat(values[3].trim()));
+				} catch (NumberFormatException e) {
+					Log.e(LOG_TAG, "Invalid line in " + file + ": " + line);
+				}
+			}
+			if (data.size() > 1 && data.getDate(0) > data.getLastDate()) {
+				data.reverse();
+			}
+			return data;
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					Log.e(LOG_TAG, "", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the date on the form yyyy-MM-dd or yyyyMMdd as yyyyMMdd, or -1 if it is not a date
+	 */
+	private static int parseDate(String value) {
+		final String digits = value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-'
+				? value.substring(0, 4) + value.substring(5, 7) + value.substring(8, 10) : value;
+		if (digits.length() != 8) {
+			return -1;
+		}
+		for (int i = 0; i < digits.length(); i++) {
+			if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+				return -1;
+			}
+		}
+		return Integer.parseInt(digits);
+	}
+
+	private static Map<String, String> readNames(File file) {
+		final Map<String, String> names = new HashMap<String, String>();
+		if (!file.exists()) {
+			return names;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int comma = line.indexOf(',');
+				if (comma > 0) {
+					names.put(StockDataFetcher.getKey(line.substring(0, comma).trim()), line.substring(comma + 1).trim());
+				}
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					Log.e(LOG_TAG, "", e);
+				}
+			}
+		}
+		return names;
+	}
+}
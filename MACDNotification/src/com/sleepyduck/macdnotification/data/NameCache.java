@@ -0,0 +1,183 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Keeps the display names of the symbols on disk, so that names are only fetched for symbols
+ * that are new or whose names have expired. Company names almost never change, so a name is
+ * kept for {@link #DEFAULT_TTL_MILLIS}. A symbol without a name, which may have been mistyped or
+ * not be listed yet, is only kept for {@link #EMPTY_TTL_MILLIS}.
+ * <p>
+ * The file has a line per symbol, of its key, the time the name was fetched and the name,
+ * separated by tabs. It is read when the cache is first used, and written by {@link #save()}.
+ */
+public class NameCache {
+	private static final String LOG_TAG = NameCache.class.getSimpleName();
+	private static final String FILE = "names.txt";
+	public static final long DEFAULT_TTL_MILLIS = 30L * 24 * 60 * 60 * 1000;
+	public static final long EMPTY_TTL_MILLIS = 24L * 60 * 60 * 1000;
+
+	private static NameCache sCache;
+
+	private final File mFile;
+	private long mTtlMillis = DEFAULT_TTL_MILLIS;
+	// Null until the file is read
+	private Map<String, Entry> mEntries = null;
+	private boolean mChanged = false;
+
+	public NameCache(File file) {
+		mFile = file;
+	}
+
+	/**
+	 * Returns the cache in the files directory of the app
+	 */
+	public static synchronized NameCache get(Context context) {
+		if (sCache == null) {
+			sCache = new NameCache(new File(context.getFilesDir(), FILE));
+		}
+		return sCache;
+	}
+
+	/**
+	 * Sets the time a name is kept after it was fetched
+	 */
+	public synchronized void setTtl(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("TTL must be positive: " + millis);
+		}
+		mTtlMillis = millis;
+	}
+
+	/**
+	 * Returns the name of the symbol, "" if it has none, or null if it is not cached or has expired
+	 */
+	public synchronized String get(String symbol) {
+		final Entry entry = getEntries().get(StockDataFetcher.getKey(symbol));
+		if (entry == null) {
+			return null;
+		}
+		final long age = System.currentTimeMillis() - entry.mFetched;
+		return age >= 0 && age < (entry.mName.length() > 0 ? mTtlMillis : EMPTY_TTL_MILLIS) ? entry.mName : null;
+	}
+
+	/**
+	 * Returns true if the symbol has a name in the cache, whether it has expired or not
+	 */
+	public synchronized boolean contains(String symbol) {
+		return getEntries().containsKey(StockDataFetcher.getKey(symbol));
+	}
+
+	/**
+	 * Caches the name of the symbol as fetched now, "" if it has none
+	 */
+	public synchronized void put(String symbol, String name) {
+		// Tabs and line breaks would break the lines of the file
+		getEntries().put(StockDataFetcher.getKey(symbol),
+				new Entry(System.currentTimeMillis(), name.replaceAll("[\t\r\n]", " ").trim()));
+		mChanged = true;
+	}
+
+	/**
+	 * Writes the cache to the file, if it has changed since it was read or last written
+	 */
+	public synchronized void save() {
+		if (!mChanged) {
+			return;
+		}
+		final File directory = mFile.getParentFile();
+		if (directory != null && !directory.exists() && !directory.mkdirs()) {
+			Log.e(LOG_TAG, "Failed to create directory");
+			return;
+		}
+		// Written next to the file and renamed, so that a failed write keeps the old names
+		final File tmp = new File(mFile.getPath() + ".tmp");
+		Writer out = null;
+		try {
+			out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+			for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+				out.write(entry.getKey() + "\t" + entry.getValue().mFetched + "\t" + entry.getValue().mName + "\n");
+			}
+			out.close();
+			out = null;
+			if (tmp.renameTo(mFile)) {
+				mChanged = false;
+			} else {
+				Log.e(LOG_TAG, "Failed to rename " + tmp);
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+			tmp.delete();
+		} finally {
+			close(out);
+		}
+	}
+
+	private Map<String, Entry> getEntries() {
+		if (mEntries == null) {
+			mEntries = read(mFile);
+		}
+		return mEntries;
+	}
+
+	private static Map<String, Entry> read(File file) {
+		final Map<String, Entry> entries = new HashMap<String, Entry>();
+		if (!file.exists()) {
+			return entries;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split("\t", 3);
+				if (fields.length == 3) {
+					try {
+						entries.put(fields[0], new Entry(Long.parseLong(fields[1]), fields[2]));
+					} catch (NumberFormatException e) {
+						Log.d(LOG_TAG, "Skipping line " + line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+		} finally {
+			close(reader);
+		}
+		return entries;
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "", e);
+			}
+		}
+	}
+
+	private static final class Entry {
+		private final long mFetched;
+		private final String mName;
+
+		private Entry(long fetched, String name) {
+			mFetched = fetched;
+			mName = name;
+		}
+	}
+}
@@ -0,0 +1,601 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sleepyduck.macdnotification.data.indicator.IndicatorRegistry;
+
+/**
+ * Parses a yahoo.finance.historicaldata response into one {@link StockDataList} per symbol.
+ * <p>
+ * This is a small XML reader for that format only. It reads the bytes of the stream through a
+ * fixed buffer, matches element names in place and parses the dates and prices straight from the
+ * bytes, so nothing is allocated per quote. The quotes are listed newest first, and are written
+ * from the end of preallocated columns, sized by the yahoo:count attribute of the response, so
+ * they end up oldest first without being moved. The columns of a response with a single symbol
+ * become the columns of its list as they are.
+ */
+final class QuoteParser {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] QUERY = bytes("query");
+	private static final byte[] QUOTE = bytes("quote");
+	private static final byte[] DATE = bytes("date");
+	private static final byte[] ADJ_CLOSE = bytes("adj_close");
+	private static final byte[] HIGH = bytes("high");
+	private static final byte[] LOW = bytes("low");
+	private static final byte[] SYMBOL = bytes("symbol");
+	private static final byte[] COUNT = bytes("count");
+
+	private static final int FIELD_NONE = 0;
+	private static final int FIELD_DATE = 1;
+	private static final int FIELD_CLOSE = 2;
+	private static final int FIELD_HIGH = 3;
+	private static final int FIELD_LOW = 4;
+
+	private static final int DEFAULT_CAPACITY = 256;
+	// Float.parseFloat is used for numbers with more digits than a long holds exactly
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+		1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final InputStream mIn;
+	private final IndicatorRegistry mRegistry;
+	private final byte[] mBuffer = new byte[4096];
+	private int mPosition = 0;
+	private int mLimit = 0;
+
+	// The name of the current element or attribute, and the value of the current attribute or
+	// the text of the current field
+	private byte[] mName = new byte[32];
+	private int mNameLength;
+	private byte[] mValue = new byte[32];
+	private int mValueLength;
+
+	// Written from the end, mFirst is the index of the last quote written
+	private int[] mDates;
+	private float[] mClose;
+	private float[] mHigh;
+	private float[] mLow;
+	private int mFirst;
+
+	// The fields of the current quote
+	private boolean mQuoteOpen = false;
+	private int mField = FIELD_NONE;
+	private int mDate;
+	private float mQuoteClose;
+	private float mQuoteHigh;
+	private float mQuoteLow;
+
+	// The quotes of each symbol are listed together, one segment per symbol
+	private final List<Segment> mSegments = new ArrayList<Segment>();
+	private Segment mSegment = null;
+	private byte[] mSymbol = new byte[16];
+	private int mSymbolLength;
+
+	QuoteParser(InputStream in) {
+		this(in, IndicatorRegistry.getDefault());
+	}
+
+	QuoteParser(InputStream in, IndicatorRegistry registry) {
+		mIn = in;
+		mRegistry = registry;
+	}
+
+	/**
+	 * Reads the whole stream and returns the lists mapped by {@link StockDataFetcher#getKey(String)}
+	 * of their symbols
+	 *
+	 * @throws IOException if the stream can not be read or is not well formed
+	 * @throws NumberFormatException if a date or price is not a number
+	 */
+	Map<String, StockDataList> parse() throws IOException {
+		int c = read();
+		while (c >= 0) {
+			if (c == '<') {
+				readTag();
+			} else if (mField != FIELD_NONE) {
+				appendValue(c);
+			}
+			c = read();
+		}
+		if (mField != FIELD_NONE) {
+			throw new IOException("Unexpected end of stream");
+		}
+		return createLists();
+	}
+
+	private void readTag() throws IOException {
+		int c = read();
+		if (c == '?') {
+			skipPast('?', '>');
+		} else if (c == '!') {
+			c = read();
+			if (c == '-') {
+				skipPast('-', '-');
+				expect('>');
+			} else {
+				skipPast('>');
+			}
+		} else if (c == '/') {
+			c = readName(read());
+			skipSpace(c);
+			endElement();
+		} else {
+			c = readName(c);
+			startElement();
+			c = readAttributes(c);
+			if (mField != FIELD_NONE) {
+				// The text of the field starts here
+				mValueLength = 0;
+			}
+			if (c == '/') {
+				expect('>');
+				endElement();
+			}
+		}
+	}
+
+	private void startElement() {
+		if (nameEquals(QUOTE)) {
+			mQuoteOpen = true;
+			mDate = 0;
+			mQuoteClose = 0;
+			mQuoteHigh = 0;
+			mQuoteLow = 0;
+			mSymbolLength = 0;
+		} else if (mQuoteOpen) {
+			mValueLength = 0;
+			if (nameEquals(DATE)) {
+				mField = FIELD_DATE;
+			} else if (nameEquals(ADJ_CLOSE)) {
+				mField = FIELD_CLOSE;
+			} else if (nameEquals(HIGH)) {
+				mField = FIELD_HIGH;
+			} else if (nameEquals(LOW)) {
+				mField = FIELD_LOW;
+			}
+		}
+	}
+
+	private void endElement() throws IOException {
+		if (mField != FIELD_NONE) {
+			// An empty field is left as 0
+			switch (mValueLength > 0 ? mField : FIELD_NONE) {
+				case FIELD_DATE: mDate = parseDate(mValue, mValueLength); break;
+				case FIELD_CLOSE: mQuoteClose = parseFloat(mValue, mValueLength); break;
+				case FIELD_HIGH: mQuoteHigh = parseFloat(mValue, mValueLength); break;
+				case FIELD_LOW: mQuoteLow = parseFloat(mValue, mValueLength); break;
+			}
+			mField = FIELD_NONE;
+		} else if (nameEquals(QUOTE)) {
+			mQuoteOpen = false;
+			addQuote();
+		}
+	}
+
+	/**
+	 * Reads the attributes up to the end of the start tag, and returns '/' if the element is
+	 * empty or '>' otherwise
+	 */
+	private int readAttributes(int c) throws IOException {
+		final boolean query = nameEquals(QUERY);
+		final boolean quote = nameEquals(QUOTE);
+		while (true) {
+			c = skipSpace(c);
+			if (c == '>' || c == '/') {
+				return c;
+			}
+			c = skipSpace(readName(c));
+			if (c != '=') {
+				throw new IOException("Expected = after attribute");
+			}
+			final int quoteChar = skipSpace(read());
+			if (quoteChar != '"' && quoteChar != '\'') {
+				throw new IOException("Expected quoted attribute value");
+			}
+			mValueLength = 0;
+			while ((c = read()) != quoteChar) {
+				if (c < 0) {
+					throw new IOException("Unexpected end of stream");
+				}
+				appendValue(c);
+			}
+			if (quote && localNameEquals(SYMBOL)) {
+				setSymbol();
+			} else if (query && localNameEquals(COUNT)) {
+				final int count = parseInt(mValue, mValueLength);
+				if (mDates == null && count > 0) {
+					allocate(count);
+				}
+			}
+			c = read();
+		}
+	}
+
+	private void addQuote() {
+		if (mSegment == null || !mSegment.matches(mSymbol, mSymbolLength)) {
+			mSegment = new Segment(mSymbol, mSymbolLength);
+			mSegments.add(mSegment);
+		}
+		if (mDates == null) {
+			allocate(DEFAULT_CAPACITY);
+		} else if (mFirst == 0) {
+			grow();
+		}
+		mFirst--;
+		mDates[mFirst] = mDate;
+		mClose[mFirst] = mQuoteClose;
+		mHigh[mFirst] = mQuoteHigh;
+		mLow[mFirst] = mQuoteLow;
+		mSegment.mFirst = mFirst;
+		mSegment.mCount++;
+	}
+
+	private void allocate(int capacity) {
+		mDates = new int[capacity];
+		mClose = new float[capacity];
+		mHigh = new float[capacity];
+		mLow = new float[capacity];
+		mFirst = capacity;
+	}
+
+	/**
+	 * Doubles the capacity, keeping the quotes at the end
+	 */
+	private void grow() {
+		final int length = mDates.length;
+		final int[] dates = mDates;
+		final float[] close = mClose;
+		final float[] high = mHigh;
+		final float[] low = mLow;
+		allocate(length * 2);
+		System.arraycopy(dates, 0, mDates, length, length);
+		System.arraycopy(close, 0, mClose, length, length);
+		System.arraycopy(high, 0, mHigh, length, length);
+		System.arraycopy(low, 0, mLow, length, length);
+		for (Segment segment : mSegments) {
+			segment.mFirst += length;
+		}
+		mFirst = length;
+	}
+
+	private Map<String, StockDataList> createLists() {
+		final Map<String, StockDataList> dataMap = new HashMap<String, StockDataList>();
+		if (mSegments.size() == 1 && mFirst == 0) {
+			// The columns are filled by one symbol
+			final Segment segment = mSegments.get(0);
+			dataMap.put(StockDataFetcher.getKey(segment.mSymbol),
+					new StockDataList(mRegistry, mDates, mClose, mHigh, mLow, mDates.length));
+			return dataMap;
+		}
+		// A symbol listed in more than one segment has its older quotes in the later segments,
+		// which are at lower indices
+		final Map<String, List<Segment>> segmentsBySymbol = new HashMap<String, List<Segment>>();
+		for (int i = mSegments.size() - 1; i >= 0; i--) {
+			final Segment segment = mSegments.get(i);
+			final String key = StockDataFetcher.getKey(segment.mSymbol);
+			List<Segment> segments = segmentsBySymbol.get(key);
+			if (segments == null) {
+				segments = new ArrayList<Segment>(1);
+				segmentsBySymbol.put(key, segments);
+			}
+			segments.add(segment);
+		}
+		for (Map.Entry<String, List<Segment>> entry : segmentsBySymbol.entrySet()) {
+			int size = 0;
+			for (Segment segment : entry.getValue()) {
+				size += segment.mCount;
+			}
+			final int[] dates = new int[size];
+			final float[] close = new float[size];
+			final float[] high = new float[size];
+			final float[] low = new float[size];
+			int i = 0;
+			for (Segment segment : entry.getValue()) {
+				System.arraycopy(mDates, segment.mFirst, dates, i, segment.mCount);
+				System.arraycopy(mClose, segment.mFirst, close, i, segment.mCount);
+				System.arraycopy(mHigh, segment.mFirst, high, i, segment.mCount);
+				System.arraycopy(mLow, segment.mFirst, low, i, segment.mCount);
+				i += segment.mCount;
+			}
+			dataMap.put(entry.getKey(), new StockDataList(mRegistry, dates, close, high, low, size));
+		}
+		return dataMap;
+	}
+
+	private int read() throws IOException {
+		if (mPosition == mLimit) {
+			mLimit = mIn.read(mBuffer, 0, mBuffer.length);
+			mPosition = 0;
+			if (mLimit <= 0) {
+				mLimit = 0;
+				return -1;
+			}
+		}
+		return mBuffer[mPosition++] & 0xFF;
+	}
+
+	private void expect(int expected) throws IOException {
+		if (read() != expected) {
+			throw new IOException("Expected " + (char) expected);
+		}
+	}
+
+	private void skipPast(int last) throws IOException {
+		int c;
+		while ((c = read()) != last) {
+			if (c < 0) {
+				throw new IOException("Unexpected end of stream");
+			}
+		}
+	}
+
+	/**
+	 * Skips past the first occurrence of the two characters
+	 */
+	private void skipPast(int first, int second) throws IOException {
+		int previous = -1;
+		int c;
+		while ((c = read()) >= 0) {
+			if (previous == first && c == second) {
+				return;
+			}
+			previous = c;
+		}
+		throw new IOException("Unexpected end of stream");
+	}
+
+	private int skipSpace(int c) throws IOException {
+		while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+			c = read();
+		}
+		if (c < 0) {
+			throw new IOException("Unexpected end of stream");
+		}
+		return c;
+	}
+
+	/**
+	 * Reads a name starting with c into mName, and returns the character after it
+	 */
+	private int readName(int c) throws IOException {
+		mNameLength = 0;
+		while (c >= 0 && c != '>' && c != '/' && c != '=' && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+			if (mNameLength == mName.length) {
+				mName = copyOf(mName, mNameLength * 2);
+			}
+			mName[mNameLength++] = (byte) c;
+			c = read();
+		}
+		if (c < 0) {
+			throw new IOException("Unexpected end of stream");
+		}
+		return c;
+	}
+
+	private void appendValue(int c) {
+		if (mValueLength == mValue.length) {
+			mValue = copyOf(mValue, mValueLength * 2);
+		}
+		mValue[mValueLength++] = (byte) c;
+	}
+
+	/**
+	 * Sets mSymbol from the attribute value, with the predefined entities decoded
+	 */
+	private void setSymbol() {
+		if (mSymbol.length < mValueLength) {
+			mSymbol = new byte[mValueLength];
+		}
+		mSymbolLength = 0;
+		for (int i = 0; i < mValueLength; i++) {
+			byte b = mValue[i];
+			if (b == '&') {
+				final int end = indexOf(mValue, ';', i, mValueLength);
+				if (end > 0) {
+					final byte decoded = decodeEntity(mValue, i + 1, end);
+					if (decoded != 0) {
+						b = decoded;
+						i = end;
+					}
+				}
+			}
+			mSymbol[mSymbolLength++] = b;
+		}
+	}
+
+	private static byte decodeEntity(byte[] b, int from, int to) {
+		final String entity = toString(b, from, to);
+		if (entity.equals("amp")) {
+			return '&';
+		} else if (entity.equals("lt")) {
+			return '<';
+		} else if (entity.equals("gt")) {
+			return '>';
+		} else if (entity.equals("quot")) {
+			return '"';
+		} else if (entity.equals("apos")) {
+			return '\'';
+		}
+		return 0;
+	}
+
+	private static int indexOf(byte[] b, int c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (b[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean nameEquals(byte[] lowerCase) {
+		return equalsIgnoreCase(mName, 0, mNameLength, lowerCase);
+	}
+
+	/**
+	 * Compares the name without any namespace prefix
+	 */
+	private boolean localNameEquals(byte[] lowerCase) {
+		final int colon = indexOf(mName, ':', 0, mNameLength);
+		return equalsIgnoreCase(mName, colon + 1, mNameLength, lowerCase);
+	}
+
+	private static boolean equalsIgnoreCase(byte[] b, int from, int to, byte[] lowerCase) {
+		if (to - from != lowerCase.length) {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			int c = b[i];
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			if (c != lowerCase[i - from]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a date on the form yyyy-MM-dd to an int on the form yyyyMMdd
+	 */
+	static int parseDate(byte[] b, int length) {
+		int date = 0;
+		int digits = 0;
+		for (int i = 0; i < length; i++) {
+			final int c = b[i];
+			if (c >= '0' && c <= '9') {
+				if (++digits > 8) {
+					return Integer.parseInt(toString(b, 0, length).trim().replace("-", ""));
+				}
+				date = date * 10 + (c - '0');
+			} else if (c != '-' && !isSpace(c)) {
+				return Integer.parseInt(toString(b, 0, length).trim().replace("-", ""));
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Invalid date: " + toString(b, 0, length));
+		}
+		return date;
+	}
+
+	private static int parseInt(byte[] b, int length) {
+		return Integer.parseInt(toString(b, 0, length).trim());
+	}
+
+	/**
+	 * Parses a decimal number the same way as {@link Float#parseFloat(String)}. Numbers with
+	 * more digits than can be handled exactly here are passed on to Float.parseFloat.
+	 */
+	static float parseFloat(byte[] b, int length) {
+		int i = 0;
+		while (i < length && isSpace(b[i])) {
+			i++;
+		}
+		while (length > i && isSpace(b[length - 1])) {
+			length--;
+		}
+		final int start = i;
+		boolean negative = false;
+		if (i < length && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean anyDigit = false;
+		for (; i < length; i++) {
+			final int c = b[i];
+			if (c >= '0' && c <= '9') {
+				anyDigit = true;
+				if (mantissa == 0 && c == '0') {
+					// Leading zeros do not count as digits
+					if (point) {
+						scale++;
+					}
+					continue;
+				}
+				if (digits == MAX_FAST_DIGITS) {
+					return Float.parseFloat(toString(b, start, length));
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (point) {
+					scale++;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				// An exponent, or something that is not a number
+				return Float.parseFloat(toString(b, start, length));
+			}
+		}
+		if (!anyDigit || scale >= POWERS_OF_TEN.length) {
+			return Float.parseFloat(toString(b, start, length));
+		}
+		// Both are exact, so the quotient is the correctly rounded double
+		final double value = mantissa / POWERS_OF_TEN[scale];
+		final long bits = Double.doubleToRawLongBits(value);
+		if (value != 0 && (value < Float.MIN_NORMAL || (bits & 0x1FFFFFFFL) == 0x10000000L)) {
+			// Exactly between two floats, where rounding to double first can round the wrong way
+			return Float.parseFloat(toString(b, start, length));
+		}
+		final float result = (float) value;
+		return negative ? -result : result;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private static String toString(byte[] b, int from, int to) {
+		return new String(b, from, to - from, UTF_8);
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(UTF_8);
+	}
+
+	private static byte[] copyOf(byte[] b, int length) {
+		final byte[] copy = new byte[length];
+		System.arraycopy(b, 0, copy, 0, Math.min(b.length, length));
+		return copy;
+	}
+
+	/**
+	 * The quotes of one symbol that are listed together
+	 */
+	private static final class Segment {
+		final String mSymbol;
+		final byte[] mSymbolBytes;
+		int mFirst;
+		int mCount = 0;
+
+		Segment(byte[] symbol, int length) {
+			mSymbolBytes = copyOf(symbol, length);
+			mSymbol = new String(mSymbolBytes, UTF_8);
+		}
+
+		boolean matches(byte[] symbol, int length) {
+			if (length != mSymbolBytes.length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (symbol[i] != mSymbolBytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.Map;
+
+/**
+ * Where the days and display names of the symbols are fetched from, see {@link YqlQuoteSource}
+ * for the web service and {@link LocalQuoteSource} for files on the device. The benchmarks fetch
+ * from a local StubQuoteServer that replays recorded responses. The methods are called from the
+ * threads of the {@link FetchExecutor}, and may block.
+ */
+public interface QuoteSource {
+
+	/**
+	 * Returns the days of the symbols from the start date to the end date, both included and on
+	 * the form yyyyMMdd, mapped by {@link StockDataFetcher#getKey(String)}. Symbols that are not
+	 * found are left out. Returns null if the source could not be read, and the symbols should
+	 * be fetched again later.
+	 */
+	Map<String, StockDataList> fetchHistory(String[] symbols, int startDate, int endDate);
+
+	/**
+	 * Returns the display names of the symbols, mapped by {@link StockDataFetcher#getKey(String)},
+	 * "" for symbols that have none. Symbols that are not found are left out. Returns null if the
+	 * source could not be read.
+	 */
+	Map<String, String> fetchNames(String[] symbols);
+
+	/**
+	 * Returns false while the source is known to be unavailable, so that failed fetches are not
+	 * retried until it is back
+	 */
+	boolean isAvailable();
+}
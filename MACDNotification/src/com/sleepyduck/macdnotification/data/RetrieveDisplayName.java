@@ -1,27 +1,9 @@
 package com.sleepyduck.macdnotification.data;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import java.util.Map;
 
 import android.os.Handler;
 import android.util.Log;
@@ -29,76 +11,46 @@ import android.util.Log;
 
 public class RetrieveDisplayName {
 	private static final String LOG_TAG = RetrieveDisplayName.class.getSimpleName();
+	// Symbols whose names are fetched in one query
+	public static final int DEFAULT_BATCH_SIZE = 50;
 
 	private RetrieveDisplayNameListener mListener = null;
 	private Handler mHandler;
+	private volatile QuoteSource mSource = new YqlQuoteSource();
+	private volatile NameCache mNameCache = null;
+	private volatile int mBatchSize = DEFAULT_BATCH_SIZE;
 
 	public RetrieveDisplayName(RetrieveDisplayNameListener listener) {
 		mListener = listener;
 		mHandler = new Handler();
 	}
 
-	private URI buildURI(final String symbol) {
-		try {
-			String query = "select Name from yahoo.finance.quote where symbol=\"" + symbol + "\"";
-			query = query.replace(" ", "%20").replace("=", "%3D").replace("\"", "%22").replace("^", "%5E");
-			query = "http://query.yahooapis.com/v1/public/yql?q=" + query;
-			query += "&env=store%3A%2F%2Fdatatables.org%2Falltableswithkeys";
-			return new URI(query);
-		} catch (final URISyntaxException e) {
-			Log.e(LOG_TAG, "", e);
-			return null;
+	/**
+	 * Sets the source that the names are fetched from, a {@link YqlQuoteSource} by default
+	 */
+	public void setQuoteSource(QuoteSource source) {
+		if (source == null) {
+			throw new IllegalArgumentException("Source must not be null");
 		}
+		mSource = source;
 	}
 
-	private String fetchData(URI uri) {
-		final HttpClient client = new DefaultHttpClient();
-		final HttpGet request = new HttpGet();
-		request.setURI(uri);
-		try {
-			final HttpResponse response = client.execute(request);
-			final BufferedReader in = new BufferedReader(new InputStreamReader(response.getEntity()
-					.getContent()));
-			final StringBuilder sb = new StringBuilder("");
-			String l;
-			while ((l = in.readLine()) != null) {
-				sb.append(l).append("\n");
-			}
-			return sb.toString();
-		} catch (final IOException e) {
-			Log.e(LOG_TAG, "", e);
-			return null;
-		}
+	/**
+	 * Sets the cache that names are looked up in before they are fetched, or null to fetch the
+	 * names of all symbols without one
+	 */
+	public void setNameCache(NameCache nameCache) {
+		mNameCache = nameCache;
 	}
 
-	private String parseName(String uriData) {
-		final List<String> name = new ArrayList<String>();
-		try {
-			final SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-			parser.parse(new InputSource(new StringReader(uriData)), new DefaultHandler() {
-				private boolean bname = false;
-
-				@Override
-				public void characters(final char[] ch, final int start, final int length) throws SAXException {
-					super.ignorableWhitespace(ch, start, length);
-					if (bname) {
-						final String data = String.copyValueOf(ch, start, length);
-						name.add(data);
-					}
-				}
-
-				@Override
-				public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
-					super.startElement(uri, localName, qName, attributes);
-					bname = qName.toLowerCase().equals("name");
-				}
-			});
-		} catch (final Exception e) {
-			Log.e(LOG_TAG, "", e);
-			Log.e(LOG_TAG, "Data: " + uriData);
-			return "";
+	/**
+	 * Sets the number of symbols whose names are fetched in one query
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
 		}
-		return name.size() > 0 ? name.get(0) : "";
+		mBatchSize = batchSize;
 	}
 
 	protected void publishResult(final Symbol symbol) {
@@ -111,40 +63,64 @@ public class RetrieveDisplayName {
 		});
 	}
 
+	/**
+	 * Queues the symbols on the {@link FetchExecutor}. Names are taken from the cache while they
+	 * have not expired, and the rest are fetched in batches, so that the names of symbols that
+	 * are already known take no requests. Names that symbols already have are cached as fetched
+	 * now if the cache has none. The listener is called for each symbol, also when the name could
+	 * not be retrieved.
+	 */
 	public void execute(final Symbol... symbolList) {
-		final List<Symbol> synchedSymbols = Collections.synchronizedList(new LinkedList<Symbol>());
-		Collections.addAll(synchedSymbols, symbolList);
-		for (int i = 0; i < 10; ++i) {
-			new Thread() {
-				@Override
-				public void run() {
-					while (synchedSymbols.size() > 0) {
-                        try {
-                            Symbol sym = synchedSymbols.remove(0);
-                            Log.d(LOG_TAG, "Retrieve display name for " + sym.getName());
-                            if (sym.hasDisplayName()) {
-                                publishResult(sym);
-                            } else {
-                                URI uri = buildURI(sym.getName());
-                                if (uri != null) {
-                                    String uriData = fetchData(uri);
-                                    if (uriData != null) {
-                                        String name = parseName(uriData);
-                                        if (name != null && name.length() > 0) {
-                                            sym.setDisplayName(name);
-                                        }
-                                    }
-                                } else {
-                                    break;
-                                }
-                            }
-                            publishResult(sym);
-                        } catch (IndexOutOfBoundsException e) {
-                            Log.e(LOG_TAG, "Synchonization error: ", e);
-                        }
+		FetchExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final NameCache nameCache = mNameCache;
+				final List<Symbol> misses = new ArrayList<Symbol>();
+				for (Symbol sym : symbolList) {
+					final String name = nameCache != null ? nameCache.get(sym.getName()) : null;
+					if (name != null) {
+						if (name.length() > 0) {
+							sym.setDisplayName(name);
+						}
+						publishResult(sym);
+					} else if (sym.hasDisplayName() && (nameCache == null || !nameCache.contains(sym.getName()))) {
+						if (nameCache != null) {
+							nameCache.put(sym.getName(), sym.getDisplayName());
+						}
+						publishResult(sym);
+					} else {
+						misses.add(sym);
 					}
 				}
-			}.start();
+				final int batchSize = mBatchSize;
+				for (int i = 0; i < misses.size(); i += batchSize) {
+					fetch(misses.subList(i, Math.min(i + batchSize, misses.size())), nameCache);
+				}
+				if (nameCache != null) {
+					nameCache.save();
+				}
+			}
+		});
+	}
+
+	private void fetch(List<Symbol> batch, NameCache nameCache) {
+		final String[] names = new String[batch.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = batch.get(i).getName();
+		}
+		Log.d(LOG_TAG, "Retrieve display names for " + Arrays.toString(names));
+		final Map<String, String> fetched = mSource.fetchNames(names);
+		for (Symbol sym : batch) {
+			final String name = fetched != null ? fetched.get(StockDataFetcher.getKey(sym.getName())) : null;
+			if (name != null) {
+				if (name.length() > 0) {
+					sym.setDisplayName(name);
+				}
+				if (nameCache != null) {
+					nameCache.put(sym.getName(), name);
+				}
+			}
+			publishResult(sym);
 		}
 	}
 
@@ -0,0 +1,112 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+/**
+ * The HTTP client shared by all fetches. Connections are kept alive and reused between requests,
+ * and the pool holds twice as many connections as {@link FetchExecutor#getConcurrency()}, so
+ * that a hedged request does not wait for the connection of the slow request it is hedging. The
+ * entity of every response must be consumed, or the request aborted, to give the connection back
+ * to the pool.
+ */
+public final class SharedHttpClient {
+	public static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+	public static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+	// Time a request waits for a connection of the pool, well within the deadline of a request
+	public static final long POOL_TIMEOUT_MILLIS = 5 * 1000;
+	// Connections per request in flight, one for the request and one for a hedge of it
+	private static final int CONNECTIONS_PER_REQUEST = 2;
+	// Idle connections are likely to have been closed by the server after this
+	private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+	private static HttpClient sClient = null;
+	private static int sMaxConnections = 0;
+	// Requests in flight on the current client
+	private static int sUsers = 0;
+	// Requests in flight on clients that have been replaced, which are shut down when they are done
+	private static final Map<HttpClient, Integer> sRetired = new IdentityHashMap<HttpClient, Integer>();
+
+	private SharedHttpClient() {
+	}
+
+	/**
+	 * Returns the shared client for a request, which must be given back with
+	 * {@link #release(HttpClient)} when the request is done. A new client is created if the
+	 * concurrency of the {@link FetchExecutor} has changed since the last one, such as when
+	 * virtual threads are turned on or off. Requests already started on the old client run to
+	 * completion, and its connections are closed after the last of them.
+	 */
+	public static synchronized HttpClient acquire() {
+		final int maxConnections = FetchExecutor.getConcurrency();
+		if (sClient == null || sMaxConnections != maxConnections) {
+			if (sClient != null) {
+				retire(sClient, sUsers);
+			}
+			sClient = create(maxConnections);
+			sMaxConnections = maxConnections;
+			sUsers = 0;
+		} else {
+			sClient.getConnectionManager().closeIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		sUsers++;
+		return sClient;
+	}
+
+	/**
+	 * Gives back a client from {@link #acquire()} once its request is done
+	 */
+	public static synchronized void release(HttpClient client) {
+		if (client == sClient) {
+			sUsers--;
+		} else {
+			final Integer users = sRetired.remove(client);
+			if (users != null) {
+				retire(client, users - 1);
+			}
+		}
+	}
+
+	private static void retire(HttpClient client, int users) {
+		if (users > 0) {
+			sRetired.put(client, users);
+		} else {
+			client.getConnectionManager().shutdown();
+		}
+	}
+
+	private static HttpClient create(int maxConnections) {
+		final HttpParams params = new BasicHttpParams();
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpProtocolParams.setContentCharset(params, "UTF-8");
+		HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MILLIS);
+		HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT_MILLIS);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		ConnManagerParams.setTimeout(params, POOL_TIMEOUT_MILLIS);
+		ConnManagerParams.setMaxTotalConnections(params, maxConnections * CONNECTIONS_PER_REQUEST);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnections * CONNECTIONS_PER_REQUEST));
+
+		final SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+		final ClientConnectionManager manager = new ThreadSafeClientConnManager(params, registry);
+		return new DefaultHttpClient(manager, params);
+	}
+}
@@ -1,130 +1,198 @@
 package com.sleepyduck.macdnotification.data;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 
 import android.os.Handler;
 import android.util.Log;
 
+import com.sleepyduck.macdnotification.data.FetchMetrics.Counter;
+import com.sleepyduck.macdnotification.data.FetchMetrics.Phase;
+
 public class StockDataFetcher {
 	private static final String LOG_TAG = StockDataFetcher.class.getSimpleName();
 
 	private static final long ONE_DAY = 1000 * 60 * 60 * 24;
+	// Trading days fetched after the lookback of the indicators
+	private static final int MARGIN_DAYS = 10;
+	// Calendar days added for holidays
+	private static final int HOLIDAY_DAYS = 14;
+	// Relative difference below which a price fetched again is considered unchanged
+	private static final float PRICE_TOLERANCE = 1e-5f;
+	// Delay before the first retry, doubled for each retry after it
+	private static final long RETRY_BASE_MILLIS = 1000;
+	private static final long RETRY_MAX_MILLIS = 60 * 1000;
+	private static final Random sRandom = new Random();
+
+	/**
+	 * Weight below which old days are left out of the indicators, see
+	 * {@link StockDataList#getLookback(double)}
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-4;
+
+	/**
+	 * Number of symbols fetched in one request
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 10;
+
+	/**
+	 * Number of times a symbol without valid data is fetched again
+	 */
+	public static final int DEFAULT_RETRIES = 3;
+
+	// Fetches in flight by symbol key, shared by all fetchers, see join(Symbol)
+	private static final Map<String, Flight> sFlights = new HashMap<String, Flight>();
+
 	private StockDataListener mListener = null;
 	private Handler mHandler;
+	private double mTolerance = DEFAULT_TOLERANCE;
+	private int mBatchSize = DEFAULT_BATCH_SIZE;
+	private int mRetries = DEFAULT_RETRIES;
+	private BarStore mBarStore;
+	private volatile QuoteSource mSource = new YqlQuoteSource();
+	// The futures of the symbols that are not done, by identity since symbols equal their names
+	private final Map<Symbol, List<FetchFuture<Symbol>>> mPending = new IdentityHashMap<Symbol, List<FetchFuture<Symbol>>>();
 
 	public StockDataFetcher(StockDataListener listener) {
 		mListener = listener;
 		mHandler = new Handler();
 	}
 
-	private URI buildURI(final String symbol) {
-		final Calendar calendar = Calendar.getInstance();
-		final String end = String.format("%04d-%02d-%02d", calendar.get(Calendar.YEAR),
-				calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
-		calendar.setTimeInMillis(calendar.getTimeInMillis() - (450L * ONE_DAY));
-		final String start = String.format("%04d-%02d-%02d", calendar.get(Calendar.YEAR),
-				calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
-
-		try {
-			String query = "select Adj_Close,High,Low from yahoo.finance.historicaldata where startDate=\"" + start
-					+ "\" AND symbol=\"" + symbol + "\" AND endDate=\"" + end + "\"";
-			query = query.replace(" ", "%20").replace("=", "%3D").replace("\"", "%22").replace("^", "%5E").replace(",", "%2C");
-			query = "http://query.yahooapis.com/v1/public/yql?q=" + query;
-			query += "&env=store%3A%2F%2Fdatatables.org%2Falltableswithkeys";
-			return new URI(query);
-		} catch (final URISyntaxException e) {
-			Log.e(LOG_TAG, "", e);
-			return null;
-		}
-	}
-
-	private String fetchData(URI uri) {
-		final HttpClient client = new DefaultHttpClient();
-		final HttpGet request = new HttpGet();
-		request.setURI(uri);
-		try {
-			final HttpResponse response = client.execute(request);
-			final BufferedReader in = new BufferedReader(new InputStreamReader(response.getEntity()
-					.getContent()));
-			final StringBuilder sb = new StringBuilder("");
-			String l;
-			while ((l = in.readLine()) != null) {
-				sb.append(l).append("\n");
-			}
-			return sb.toString();
-		} catch (final IOException e) {
-			Log.e(LOG_TAG, "", e);
-			return null;
-		}
-	}
-
-	private StockDataList parseData(String uriData) {
-		final StockDataList data = new StockDataList();
-		try {
-			final SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-			parser.parse(new InputSource(new StringReader(uriData)), new DefaultHandler() {
-				private boolean mClose = false;
-				private boolean mHigh = false;
-				private boolean mLow = false;
+	/**
+	 * Sets the weight below which old days are left out of the indicators. A lower tolerance
+	 * fetches more history for each symbol.
+	 */
+	public void setTolerance(double tolerance) {
+		if (!(tolerance > 0 && tolerance < 1)) {
+			throw new IllegalArgumentException("Tolerance must be between 0 and 1: " + tolerance);
+		}
+		mTolerance = tolerance;
+	}
 
-				@Override
-				public void characters(final char[] ch, final int start, final int length) throws SAXException {
-					super.ignorableWhitespace(ch, start, length);
-					final String chars = String.copyValueOf(ch, start, length);
-					if (mClose) {
-						data.get(0).Close = Float.valueOf(chars);
-					} else if (mHigh) {
-						data.get(0).High = Float.valueOf(chars);
-					} else if (mLow) {
-						data.get(0).Low = Float.valueOf(chars);
-					}
-				}
+	/**
+	 * Sets the number of symbols fetched in one request
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		}
+		mBatchSize = batchSize;
+	}
 
-				@Override
-				public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
-					super.startElement(uri, localName, qName, attributes);
-					mClose = qName.toLowerCase().equals("adj_close");
-					mHigh = qName.toLowerCase().equals("high");
-					mLow = qName.toLowerCase().equals("low");
-					if (qName.toLowerCase().equals("quote")) {
-						data.add(0, new StockData());
-					}
-				}
-			});
-		} catch (final Exception e) {
-			Log.e(LOG_TAG, "", e);
-			Log.e(LOG_TAG, "Data: " + uriData);
-			return null;
+	/**
+	 * Sets the number of times a symbol without valid data is fetched again, with a backoff
+	 * between the retries, see {@link #getRetryDelay(int)}
+	 */
+	public void setRetries(int retries) {
+		if (retries < 0) {
+			throw new IllegalArgumentException("Retries must not be negative: " + retries);
 		}
-		return data;
+		mRetries = retries;
+	}
+
+	/**
+	 * Sets the source that the days are fetched from, a {@link YqlQuoteSource} by default
+	 */
+	public void setQuoteSource(QuoteSource source) {
+		if (source == null) {
+			throw new IllegalArgumentException("Source must not be null");
+		}
+		mSource = source;
+	}
+
+	/**
+	 * Sets the store that the fetched days are saved to, or null to not save them
+	 */
+	public void setBarStore(BarStore barStore) {
+		mBarStore = barStore;
+	}
+
+	/**
+	 * Returns the number of days the indicators need to converge, and that are kept stored
+	 */
+	private int getHistoryTradingDays() {
+		return StockDataList.getLookback(mTolerance) + MARGIN_DAYS;
+	}
+
+	/**
+	 * Returns the number of calendar days to fetch for the indicators to converge
+	 */
+	private int getHistoryDays() {
+		final int tradingDays = getHistoryTradingDays();
+		// Five trading days a week
+		return (tradingDays * 7 + 4) / 5 + HOLIDAY_DAYS;
+	}
+
+	/**
+	 * Returns the first date of a full fetch, on the form yyyyMMdd
+	 */
+	private int getFullStartDate() {
+		final Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(calendar.getTimeInMillis() - (getHistoryDays() * ONE_DAY));
+		return toDate(calendar);
+	}
+
+	/**
+	 * Returns the date to fetch the symbol from. A symbol with stock data that is recent enough
+	 * only needs the days from its last day, which is fetched again to check that the history
+	 * has not changed, see {@link #isConsistent(StockDataList, StockDataList)}.
+	 */
+	private int getStartDate(Symbol symbol, int fullStartDate) {
+		if (symbol.hasStockData() && symbol.getStockData().getLastDate() >= fullStartDate) {
+			return symbol.getStockData().getLastDate();
+		}
+		return fullStartDate;
+	}
+
+	/**
+	 * Returns the date of today, on the form yyyyMMdd
+	 */
+	private static int getToday() {
+		return toDate(Calendar.getInstance());
+	}
+
+	private static int toDate(Calendar calendar) {
+		return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+				+ calendar.get(Calendar.DAY_OF_MONTH);
+	}
+
+	/**
+	 * Returns the key of the symbol in the maps returned by
+	 * {@link QuoteSource#fetchHistory(String[], int, int)}
+	 */
+	public static String getKey(String symbol) {
+		return symbol != null ? symbol.toUpperCase(Locale.US) : "";
 	}
 
-	private boolean preCalculateIndicators(Symbol symbol, StockDataList data) {
-		// Reverse the data so that the oldest value is first
-		if (data.size() >= 0) {
-			symbol.setStockData(data);
-			data.calculateIndicators();
+	private boolean preCalculateIndicators(Symbol symbol, StockDataList data, boolean delta) {
+		// The indicators are calculated when they are first read
+		if (data.size() > 0) {
+			final long start = System.nanoTime();
+			if (delta) {
+				// Only calculate the days that are new since the last fetch. They are appended to a
+				// copy, which replaces the stock data once it is complete, since the stock data may
+				// be read by the main thread meanwhile.
+				final StockDataList stockData = symbol.getStockData();
+				final StockDataList appended = stockData.copy(stockData.size() + data.size());
+				int count = appended.append(data);
+				symbol.setStockData(appended);
+				Log.d(LOG_TAG, "Appended " + count + " days to " + symbol);
+			} else {
+				symbol.setStockData(data);
+			}
+			final long calculated = System.nanoTime();
+			FetchMetrics.get().record(Phase.CALCULATION, calculated - start);
+			storeData(symbol, data, delta);
+			FetchMetrics.get().record(Phase.STORE, System.nanoTime() - calculated);
 			return true;
 		} else {
 			String message = symbol + " could not be found";
@@ -134,13 +202,41 @@ public class StockDataFetcher {
 		return false;
 	}
 
+	private void storeData(Symbol symbol, StockDataList data, boolean delta) {
+		final BarStore barStore = mBarStore;
+		if (barStore != null) {
+			if (delta) {
+				barStore.append(symbol.getName(), data, getHistoryTradingDays());
+			} else {
+				barStore.write(symbol.getName(), data);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the first day of the newly fetched data is the last day of the stock data,
+	 * with the same prices. Adjusted prices change for all of the history after a split or a
+	 * dividend, and the history must then be fetched again.
+	 */
+	private static boolean isConsistent(StockDataList data, StockDataList newData) {
+		final int last = data.size() - 1;
+		return newData.getDate(0) == data.getLastDate()
+				&& isSamePrice(data.get(last, StockEnum.Close), newData.get(0, StockEnum.Close))
+				&& isSamePrice(data.get(last, StockEnum.High), newData.get(0, StockEnum.High))
+				&& isSamePrice(data.get(last, StockEnum.Low), newData.get(0, StockEnum.Low));
+	}
+
+	private static boolean isSamePrice(float a, float b) {
+		return Math.abs(a - b) <= PRICE_TOLERANCE * Math.max(Math.abs(a), Math.abs(b));
+	}
+
 	private boolean validateData(StockDataList data) {
 		if (data == null) {
 			return false;
 		} else if (data.size() == 0)
 			return false;
-		for (StockData st : data)
-			if (st.Close < 0)
+		for (int i = 0; i < data.size(); i++)
+			if (data.get(i, StockEnum.Close) < 0)
 				return false;
 		return true;
 	}
@@ -155,50 +251,328 @@ public class StockDataFetcher {
 		});
 	}
 
+	/**
+	 * Completes the futures of the symbol
+	 */
 	protected void publishResult(final Symbol symbol) {
-		mHandler.post(new Runnable() {
-			@Override
-			public void run() {
-				if (mListener != null)
-					mListener.onCalculationComplete(symbol);
+		final List<FetchFuture<Symbol>> futures;
+		synchronized (mPending) {
+			futures = mPending.remove(symbol);
+		}
+		if (futures != null) {
+			for (FetchFuture<Symbol> future : futures) {
+				future.set(symbol);
 			}
-		});
+		}
 	}
 
+	/**
+	 * Fetches the symbols like {@link #fetch(Symbol...)}, and calls the listener on the thread of
+	 * the fetcher for each symbol that is done. The time until it is called is recorded as the
+	 * {@link Phase#DELIVERY} of the {@link FetchMetrics}.
+	 */
 	public void execute(final Symbol... symbolList) {
-		final List<Symbol> synchedSymbols = Collections.synchronizedList(new LinkedList<Symbol>());
-		Collections.addAll(synchedSymbols, symbolList);
-		for (int i = 0; i < 10; ++i) {
-			new Thread() {
+		final FetchBatch batch = fetch(symbolList);
+		for (int i = 0; i < symbolList.length; i++) {
+			final Symbol symbol = symbolList[i];
+			final FetchFuture<Symbol> future = batch.getFuture(i);
+			future.addListener(new Runnable() {
 				@Override
 				public void run() {
-					while (synchedSymbols.size() > 0) {
-						Symbol sym = synchedSymbols.remove(0);
-						Log.d(LOG_TAG, "Calculate MACD for " + sym.getName());
-						if (sym.hasStockData()) {
-							publishResult(sym);
-						} else {
-							URI uri = buildURI(sym.getName());
-							if (uri != null) {
-								String uriData = fetchData(uri);
-								if (uriData != null) {
-									StockDataList pData = parseData(uriData);
-									if (validateData(pData)) {
-										preCalculateIndicators(sym, pData);
-									} else {
-										break;
-									}
-								} else {
-									break;
-								}
-							} else {
-								break;
-							}
+					final long done = System.nanoTime();
+					mHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							FetchMetrics.get().record(Phase.DELIVERY, System.nanoTime() - done);
+							if (mListener != null && !future.isCancelled())
+								mListener.onCalculationComplete(symbol);
 						}
-						publishResult(sym);
-					}
+					});
 				}
-			}.start();
+			});
+		}
+	}
+
+	/**
+	 * Queues the symbols on the {@link FetchExecutor}, in batches that are fetched in one request
+	 * each. Symbols that already have stock data only fetch the days since their last day.
+	 * <p>
+	 * Returns a future for each symbol, that is done once the symbol has valid data or the retries
+	 * are used up, and the batch of them that is done when they all are. A symbol whose futures
+	 * are cancelled before its request is started is not fetched, unless a symbol of another
+	 * fetch has joined it.
+	 */
+	public FetchBatch fetch(final Symbol... symbolList) {
+		final List<FetchFuture<Symbol>> futures = new ArrayList<FetchFuture<Symbol>>(symbolList.length);
+		synchronized (mPending) {
+			for (Symbol sym : symbolList) {
+				final FetchFuture<Symbol> future = new FetchFuture<Symbol>();
+				List<FetchFuture<Symbol>> pending = mPending.get(sym);
+				if (pending == null) {
+					pending = new ArrayList<FetchFuture<Symbol>>(1);
+					mPending.put(sym, pending);
+				}
+				pending.add(future);
+				futures.add(future);
+			}
+		}
+		final FetchBatch batch = new FetchBatch(symbolList, futures);
+		start(symbolList);
+		return batch;
+	}
+
+	private void start(final Symbol[] symbolList) {
+		final int fullStartDate = getFullStartDate();
+		final Map<Integer, List<Symbol>> symbolsByStartDate = new LinkedHashMap<Integer, List<Symbol>>();
+		for (Symbol sym : symbolList) {
+			if (join(sym)) {
+				continue;
+			}
+			final Integer startDate = getStartDate(sym, fullStartDate);
+			List<Symbol> symbols = symbolsByStartDate.get(startDate);
+			if (symbols == null) {
+				symbols = new ArrayList<Symbol>();
+				symbolsByStartDate.put(startDate, symbols);
+			}
+			symbols.add(sym);
+		}
+		for (Map.Entry<Integer, List<Symbol>> entry : symbolsByStartDate.entrySet()) {
+			final Symbol[] symbols = entry.getValue().toArray(new Symbol[entry.getValue().size()]);
+			final int startDate = entry.getKey();
+			for (int i = 0; i < symbols.length; i += mBatchSize) {
+				final Symbol[] batch = Arrays.copyOfRange(symbols, i, Math.min(i + mBatchSize, symbols.length));
+				queue(batch, startDate, startDate != fullStartDate, 0, 0);
+			}
+		}
+	}
+
+	private void queue(final Symbol[] batch, final int startDate, final boolean delta, final int attempt,
+			long delayMillis) {
+		final long queued = System.nanoTime() + delayMillis * 1000000;
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				FetchMetrics.get().record(Phase.QUEUE_WAIT, System.nanoTime() - queued);
+				final Symbol[] symbols = removeCancelled(batch);
+				if (symbols.length == 0) {
+					return;
+				}
+				List<Symbol> failed;
+				try {
+					failed = fetch(symbols, startDate, delta);
+				} catch (RuntimeException e) {
+					// Such as from a source, so the symbols that are not done yet are retried
+					// and their futures are completed when the retries are used up
+					Log.e(LOG_TAG, "", e);
+					failed = getPending(symbols);
+				}
+				retry(failed, startDate, delta, attempt);
+			}
+		};
+		if (delayMillis > 0) {
+			FetchExecutor.schedule(task, delayMillis);
+		} else {
+			FetchExecutor.execute(task);
+		}
+	}
+
+	/**
+	 * Fetches the batch and publishes the symbols with valid data. Delta fetched symbols whose
+	 * history has changed are queued for a full fetch.
+	 *
+	 * @return the symbols without valid data
+	 */
+	private List<Symbol> fetch(Symbol[] batch, int startDate, boolean delta) {
+		Log.d(LOG_TAG, "Calculate MACD for " + Arrays.toString(batch) + " from " + startDate);
+		final List<Symbol> failed = new ArrayList<Symbol>();
+		final String[] names = new String[batch.length];
+		for (int i = 0; i < batch.length; i++) {
+			names[i] = batch[i].getName();
+		}
+		Map<String, StockDataList> pData = mSource.fetchHistory(names, startDate, getToday());
+		if (pData == null) {
+			for (Symbol sym : batch) {
+				FetchMetrics.get().increment(Counter.FAILURES, sym.getName());
+			}
+			Collections.addAll(failed, batch);
+			return failed;
+		}
+		final List<Symbol> inconsistent = new ArrayList<Symbol>();
+		for (Symbol sym : batch) {
+			StockDataList data = pData.get(getKey(sym.getName()));
+			if (data == null && batch.length == 1 && pData.size() == 1) {
+				// The quotes of a single symbol may not name it
+				data = pData.values().iterator().next();
+			}
+			if (delta && (data == null || data.size() == 0 || !isConsistent(sym.getStockData(), data))) {
+				Log.d(LOG_TAG, "The history of " + sym + " has changed");
+				inconsistent.add(sym);
+			} else if (validateData(data)) {
+				preCalculateIndicators(sym, data, delta);
+				publishResult(sym);
+				land(sym, true);
+			} else {
+				Log.d(LOG_TAG, "No valid data for " + sym);
+				FetchMetrics.get().increment(Counter.FAILURES, sym.getName());
+				failed.add(sym);
+			}
+		}
+		if (!inconsistent.isEmpty()) {
+			queue(inconsistent.toArray(new Symbol[inconsistent.size()]), getFullStartDate(), false, 0, 0);
+		}
+		return failed;
+	}
+
+	/**
+	 * Queues the failed symbols again after a backoff, or publishes them without new data once
+	 * the retries are used up. Nothing is retried while the source is not available, such as
+	 * while the {@link CircuitBreaker} of its host is open, so that the symbols fail fast while
+	 * the source is down.
+	 */
+	private void retry(List<Symbol> failed, int startDate, boolean delta, int attempt) {
+		if (failed.isEmpty()) {
+			return;
+		}
+		if (attempt < mRetries && mSource.isAvailable()) {
+			final long delay = getRetryDelay(attempt);
+			Log.d(LOG_TAG, "Retrying " + failed + " in " + delay + " ms");
+			for (Symbol sym : failed) {
+				FetchMetrics.get().increment(Counter.RETRIES, sym.getName());
+			}
+			queue(failed.toArray(new Symbol[failed.size()]), startDate, delta, attempt + 1, delay);
+		} else {
+			Log.d(LOG_TAG, "Giving up on " + failed + " after " + attempt + " retries");
+			for (Symbol sym : failed) {
+				publishResult(sym);
+				land(sym, true);
+			}
+		}
+	}
+
+	/**
+	 * Returns the delay before the retry after the attempt: an exponential backoff where half of
+	 * the delay is random, so that symbols that failed together are not retried together
+	 */
+	static long getRetryDelay(int attempt) {
+		final long backoff = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(attempt, 16));
+		return backoff / 2 + (long) (sRandom.nextDouble() * (backoff / 2));
+	}
+
+	/**
+	 * Returns the symbols of the batch that are still to be fetched. Symbols whose futures are
+	 * all cancelled are left out, unless other symbols have joined their flight.
+	 */
+	private Symbol[] removeCancelled(Symbol[] batch) {
+		final List<Symbol> symbols = new ArrayList<Symbol>(batch.length);
+		for (Symbol sym : batch) {
+			if (isCancelled(sym) && !hasFollowers(sym)) {
+				Log.d(LOG_TAG, "Cancelled " + sym);
+				synchronized (mPending) {
+					mPending.remove(sym);
+				}
+				land(sym, false);
+			} else {
+				symbols.add(sym);
+			}
+		}
+		return symbols.size() == batch.length ? batch : symbols.toArray(new Symbol[symbols.size()]);
+	}
+
+	/**
+	 * Returns the symbols whose futures are not completed yet
+	 */
+	private List<Symbol> getPending(Symbol[] symbols) {
+		final List<Symbol> pending = new ArrayList<Symbol>(symbols.length);
+		synchronized (mPending) {
+			for (Symbol sym : symbols) {
+				if (mPending.containsKey(sym)) {
+					pending.add(sym);
+				}
+			}
+		}
+		return pending;
+	}
+
+	private boolean isCancelled(Symbol symbol) {
+		synchronized (mPending) {
+			final List<FetchFuture<Symbol>> futures = mPending.get(symbol);
+			if (futures == null) {
+				return false;
+			}
+			for (FetchFuture<Symbol> future : futures) {
+				if (!future.isCancelled()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static boolean hasFollowers(Symbol symbol) {
+		synchronized (sFlights) {
+			final Flight flight = sFlights.get(getKey(symbol.getName()));
+			return flight != null && flight.mSymbol == symbol && !flight.mFollowers.isEmpty();
+		}
+	}
+
+	/**
+	 * Joins the fetch in flight of a symbol with the same name, from this or any other fetcher.
+	 * Otherwise a new flight is started that the symbol is fetched by.
+	 *
+	 * @return true if the symbol joined a fetch that is already in flight
+	 */
+	private boolean join(Symbol symbol) {
+		final String key = getKey(symbol.getName());
+		synchronized (sFlights) {
+			final Flight flight = sFlights.get(key);
+			if (flight == null) {
+				sFlights.put(key, new Flight(symbol));
+				return false;
+			}
+			flight.mFollowers.add(new Follower(this, symbol));
+			Log.d(LOG_TAG, symbol + " joined the fetch in flight");
+			return true;
+		}
+	}
+
+	/**
+	 * Ends the flight of the symbol if it has not already ended, and completes the symbols that
+	 * joined it. If the symbol was fetched or given up on, they are given its stock data.
+	 */
+	private static void land(Symbol symbol, boolean fetched) {
+		final String key = getKey(symbol.getName());
+		final Flight flight;
+		synchronized (sFlights) {
+			flight = sFlights.get(key);
+			if (flight == null || flight.mSymbol != symbol) {
+				return;
+			}
+			sFlights.remove(key);
+		}
+		for (Follower follower : flight.mFollowers) {
+			if (fetched && follower.mSymbol != symbol && symbol.hasStockData()) {
+				follower.mSymbol.setStockData(symbol.getStockData());
+			}
+			follower.mFetcher.publishResult(follower.mSymbol);
+		}
+	}
+
+	private static final class Flight {
+		private final Symbol mSymbol;
+		private final List<Follower> mFollowers = new ArrayList<Follower>();
+
+		private Flight(Symbol symbol) {
+			mSymbol = symbol;
+		}
+	}
+
+	private static final class Follower {
+		private final StockDataFetcher mFetcher;
+		private final Symbol mSymbol;
+
+		private Follower(StockDataFetcher fetcher, Symbol symbol) {
+			mFetcher = fetcher;
+			mSymbol = symbol;
 		}
 	}
 
@@ -1,151 +1,526 @@
 package com.sleepyduck.macdnotification.data;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.sleepyduck.macdnotification.data.indicator.Indicator;
+import com.sleepyduck.macdnotification.data.indicator.IndicatorRegistry;
+import com.sleepyduck.macdnotification.data.indicator.PrefixSum;
+import com.sleepyduck.macdnotification.data.indicator.Series;
 
 /**
+ * A daily price series stored column by column, one float[] per {@link Indicator} of its
+ * {@link IndicatorRegistry}, with the oldest value first. The {@link StockEnum} values are the
+ * indicators used by the app, and are registered by every list.
+ * <p>
+ * Indicator columns are calculated the first time they are read, together with any inputs that
+ * are not calculated yet, and then kept until the days of the list are changed. Indicators that
+ * are never read are never calculated. Rows can still be read as
+ * {@link StockData} through {@link #get(int)}, but indicator code should use
+ * {@link #get(int, StockEnum)} or {@link #getColumn(Indicator)}. Several threads can read the
+ * list, and calculate its columns, at the same time, but the days must not be changed while
+ * other threads read it.
+ * <p>
+ * Each day also has a date, stored as an int on the form yyyyMMdd. New days can be added with
+ * {@link #append(int, float, float, float)}, which only calculates the indicators of the new day.
+ *
  * @author Fredrik Metcalf
  */
-public class StockDataList extends ArrayList<StockData> {
-	public void calculateIndicators() {
-		for (int i = 0; i < size(); i++) {
-			// MACD
-			calcMACD_12_26(i);
-			calcMACD_12_26(i);
+public class StockDataList implements Series, Serializable, Iterable<StockData> {
+	private static final long serialVersionUID = 4187409537263146018L;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	// Only the dates and the source columns are serialized, see writeObject()
+	private transient IndicatorRegistry mRegistry;
+	private transient Indicator[] mStockEnumIndicators;
+	// One column per indicator id, null until calculated. The array is replaced instead of changed
+	// when a column is added or dropped, so that getColumn() can read it without the lock and
+	// still only see columns that are fully calculated.
+	private transient volatile float[][] mColumns;
+	private transient int[] mDates;
+	private transient int mSize;
+	private transient int mCapacity;
+
+	// Running state of each calculated indicator, used by append()
+	private transient Indicator.Stepper[] mSteppers;
+	// Shared by the moving averages of the same source while columns are being calculated
+	private transient Map<Indicator, PrefixSum> mPrefixSums;
+
+	public StockDataList() {
+		this(IndicatorRegistry.getDefault(), DEFAULT_CAPACITY);
+	}
+
+	public StockDataList(int capacity) {
+		this(IndicatorRegistry.getDefault(), capacity);
+	}
+
+	public StockDataList(IndicatorRegistry registry, int capacity) {
+		init(registry, capacity);
+	}
+
+	/**
+	 * Creates a list of the first size days of the arrays, oldest first. The arrays are used as
+	 * the columns of the list without being copied, and must not be changed by the caller after
+	 * this.
+	 */
+	public StockDataList(IndicatorRegistry registry, int[] dates, float[] close, float[] high, float[] low,
+			int size) {
+		if (size < 0 || size > dates.length || size > close.length || size > high.length || size > low.length) {
+			throw new IllegalArgumentException("Invalid size " + size);
+		}
+		init(registry, dates, close, high, low, size);
+	}
+
+	private void init(IndicatorRegistry registry, int capacity) {
+		capacity = Math.max(capacity, 1);
+		init(registry, new int[capacity], new float[capacity], new float[capacity], new float[capacity], 0);
+	}
+
+	private void init(IndicatorRegistry registry, int[] dates, float[] close, float[] high, float[] low, int size) {
+		mRegistry = registry;
+		mSize = size;
+		mCapacity = Math.min(Math.min(dates.length, close.length), Math.min(high.length, low.length));
+		mDates = dates;
+		mStockEnumIndicators = new Indicator[StockEnum.values().length];
+		for (StockEnum e : StockEnum.values()) {
+			mStockEnumIndicators[e.ordinal()] = toIndicator(registry, e);
+		}
+		final float[][] columns = new float[registry.size()][];
+		columns[registry.close().getId()] = close;
+		columns[registry.high().getId()] = high;
+		columns[registry.low().getId()] = low;
+		mColumns = columns;
+	}
+
+	private static Indicator toIndicator(IndicatorRegistry registry, StockEnum e) {
+		switch (e) {
+			case Close: return registry.close();
+			case High: return registry.high();
+			case Low: return registry.low();
+			case Close_EMA_8: return registry.ema(8);
+			case Close_EMA_12: return registry.ema(12);
+			case Close_EMA_17: return registry.ema(17);
+			case Close_EMA_26: return registry.ema(26);
+			case Close_SMA_10: return registry.sma(10);
+			case MACD_8_17: return registry.macd(8, 17);
+			case MACD_12_26: return registry.macd(12, 26);
+			case MACD_Signal_8_17_9: return registry.macd(8, 17, 9).getSignal();
+			case MACD_Histogram_8_17_9: return registry.macd(8, 17, 9).getHistogram();
+			case High_14: return registry.stochastic(14, 5).getHighest();
+			case Low_14: return registry.stochastic(14, 5).getLowest();
+			case Stochastic_14_5: return registry.stochastic(14, 5).getFast();
+			case Stochastic_14_5_Slow: return registry.stochastic(14, 5).getSlow();
+			case Stochastic_Signal_14_5_Slow: return registry.stochastic(14, 5).getSignal();
+			default: throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Returns the lookback of the default registry, with the {@link StockEnum} indicators
+	 * registered, see {@link IndicatorRegistry#getLookback(double)}
+	 */
+	public static int getLookback(double tolerance) {
+		final IndicatorRegistry registry = IndicatorRegistry.getDefault();
+		for (StockEnum e : StockEnum.values()) {
+			toIndicator(registry, e);
+		}
+		return registry.getLookback(tolerance);
+	}
+
+	public IndicatorRegistry getRegistry() {
+		return mRegistry;
+	}
+
+	public Indicator getIndicator(StockEnum e) {
+		return mStockEnumIndicators[e.ordinal()];
+	}
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Appends a new day to the end of the series without calculating it. Any calculated
+	 * indicators are discarded and calculated again when next read.
+	 */
+	public synchronized void add(int date, float close, float high, float low) {
+		ensureCapacity(mSize + 1);
+		discardIndicators();
+		mDates[mSize] = date;
+		mColumns[mRegistry.close().getId()][mSize] = close;
+		mColumns[mRegistry.high().getId()][mSize] = high;
+		mColumns[mRegistry.low().getId()][mSize] = low;
+		mSize++;
+	}
 
-			// MACD Rule #1
-			calcMACD_8_17(i);
-			calcMACD_8_17(i);
-			calcMACD_Signal_8_17_9(i);
-			calcMACD_Signal_8_17_9(i);
+	/**
+	 * Returns a copy of day i as a {@link StockData}. Changes to the returned object are not
+	 * written back to the list.
+	 */
+	public StockData get(int i) {
+		checkIndex(i);
+		final StockData data = new StockData();
+		data.Close = get(i, StockEnum.Close);
+		data.High = get(i, StockEnum.High);
+		data.Low = get(i, StockEnum.Low);
+		data.Close_EMA_8 = get(i, StockEnum.Close_EMA_8);
+		data.Close_EMA_12 = get(i, StockEnum.Close_EMA_12);
+		data.Close_EMA_17 = get(i, StockEnum.Close_EMA_17);
+		data.Close_EMA_26 = get(i, StockEnum.Close_EMA_26);
+		data.Close_SMA_10 = get(i, StockEnum.Close_SMA_10);
+		data.MACD_Signal_8_17_9 = get(i, StockEnum.MACD_Signal_8_17_9);
+		data.High_14 = get(i, StockEnum.High_14);
+		data.Low_14 = get(i, StockEnum.Low_14);
+		data.Stochastic_14_5 = get(i, StockEnum.Stochastic_14_5);
+		data.Stochastic_14_5_Slow = get(i, StockEnum.Stochastic_14_5_Slow);
+		data.Stochastic_Signal_14_5_Slow = get(i, StockEnum.Stochastic_Signal_14_5_Slow);
+		return data;
+	}
 
-			// Stochastic
-			calcStochastic_14_5_Slow(i);
-			calcStochastic_14_5_Slow(i);
-			calcStochastic_Signal_14_5_Slow(i);
-			calcStochastic_Signal_14_5_Slow(i);
+	public float get(int i, StockEnum e) {
+		return get(i, getIndicator(e));
+	}
 
-			// Moving Average
-			calcClose_SMA_10(i);
-			calcClose_SMA_10(i);
+	public float get(int i, Indicator indicator) {
+		checkIndex(i);
+		return getColumn(indicator)[i];
+	}
+
+	/**
+	 * Sets a source value of day i. Any calculated indicators are discarded and calculated again
+	 * when next read.
+	 */
+	public synchronized void set(int i, StockEnum e, float value) {
+		checkIndex(i);
+		final Indicator indicator = getIndicator(e);
+		if (!indicator.isSource()) {
+			throw new IllegalArgumentException(e + " is calculated and can not be set");
 		}
+		discardIndicators();
+		mColumns[indicator.getId()][i] = value;
 	}
 
-	private void calcClose_EMA_8(int i) {
-		if (i > 0) {
-			get(i).Close_EMA_8 = calcEMA(get(i-1).Close_EMA_8, get(i).Close, 8);
-		} else {
-			get(i).Close_EMA_8 = get(i).Close;
+	/**
+	 * Returns the date of day i on the form yyyyMMdd, or 0 if it is not known
+	 */
+	public int getDate(int i) {
+		checkIndex(i);
+		return mDates[i];
+	}
+
+	public void setDate(int i, int date) {
+		checkIndex(i);
+		mDates[i] = date;
+	}
+
+	/**
+	 * Returns the date of the last day, or 0 if the list is empty
+	 */
+	public int getLastDate() {
+		return mSize > 0 ? mDates[mSize - 1] : 0;
+	}
+
+	public float[] getColumn(StockEnum e) {
+		return getColumn(getIndicator(e));
+	}
+
+	/**
+	 * Returns the backing array of the column of the indicator, calculating it and its inputs if
+	 * needed. Only the first {@link #size()} values are valid, and the array is replaced when the
+	 * list grows.
+	 */
+	@Override
+	public float[] getColumn(Indicator indicator) {
+		final float[][] columns = mColumns;
+		final int id = indicator.getId();
+		if (indicator.getRegistry() == mRegistry && id < columns.length && columns[id] != null) {
+			return columns[id];
 		}
+		return calculate(indicator);
 	}
 
-	private void calcClose_EMA_12(int i) {
-		if (i > 0) {
-			get(i).Close_EMA_12 = calcEMA(get(i-1).Close_EMA_12, get(i).Close, 12);
-		} else {
-			get(i).Close_EMA_12 = get(i).Close;
+	@Override
+	public PrefixSum getPrefixSum(Indicator indicator) {
+		if (mPrefixSums == null) {
+			return new PrefixSum(getColumn(indicator), mSize);
+		}
+		PrefixSum sum = mPrefixSums.get(indicator);
+		if (sum == null) {
+			sum = new PrefixSum(getColumn(indicator), mSize);
+			mPrefixSums.put(indicator, sum);
 		}
+		return sum;
 	}
 
-	private void calcClose_EMA_17(int i) {
-		if (i > 0) {
-			get(i).Close_EMA_17 = calcEMA(get(i-1).Close_EMA_17, get(i).Close, 17);
-		} else {
-			get(i).Close_EMA_17 = get(i).Close;
+	/**
+	 * Reverses the order of the days, used when the data was added newest first.
+	 */
+	public synchronized void reverse() {
+		discardIndicators();
+		for (int i = 0, j = mSize - 1; i < j; i++, j--) {
+			final int tmp = mDates[i];
+			mDates[i] = mDates[j];
+			mDates[j] = tmp;
+		}
+		for (float[] column : mColumns) {
+			if (column != null) {
+				for (int i = 0, j = mSize - 1; i < j; i++, j--) {
+					final float tmp = column[i];
+					column[i] = column[j];
+					column[j] = tmp;
+				}
+			}
 		}
 	}
 
-	private void calcClose_EMA_26(int i) {
-		if (i > 0) {
-			get(i).Close_EMA_26 = calcEMA(get(i-1).Close_EMA_26, get(i).Close, 26);
-		} else {
-			get(i).Close_EMA_26 = get(i).Close;
+	public synchronized void trimToSize() {
+		if (mSize > 0) {
+			resize(mSize);
 		}
 	}
 
-	private void calcClose_SMA_10(int i) {
-		get(i).Close_SMA_10 = calcSMA(i, StockEnum.Close, 10);
+	@Override
+	public Iterator<StockData> iterator() {
+		return new Iterator<StockData>() {
+			private int mNext = 0;
+
+			@Override
+			public boolean hasNext() {
+				return mNext < mSize;
+			}
+
+			@Override
+			public StockData next() {
+				if (mNext >= mSize) {
+					throw new NoSuchElementException();
+				}
+				return get(mNext++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
-	private void calcMACD_8_17(int i) {
-		calcClose_EMA_8(i);
-		calcClose_EMA_17(i);
+	@Override
+	public String toString() {
+		return "StockDataList{size: " + mSize + "}";
 	}
 
-	private void calcMACD_12_26(int i) {
-		calcClose_EMA_12(i);
-		calcClose_EMA_26(i);
+	private void checkIndex(int i) {
+		if (i < 0 || i >= mSize) {
+			throw new IndexOutOfBoundsException("Invalid index " + i + ", size is " + mSize);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > mCapacity) {
+			resize(Math.max(capacity, mCapacity * 2));
+		}
+	}
+
+	private void resize(int capacity) {
+		if (capacity == mCapacity) {
+			return;
+		}
+		mCapacity = capacity;
+		mDates = Arrays.copyOf(mDates, capacity);
+		final float[][] columns = mColumns.clone();
+		for (int c = 0; c < columns.length; c++) {
+			if (columns[c] != null) {
+				columns[c] = Arrays.copyOf(columns[c], capacity);
+			}
+		}
+		mColumns = columns;
 	}
 
-	private void calcMACD_Signal_8_17_9(int i) {
-		if (i > 0) {
-			get(i).MACD_Signal_8_17_9 = calcEMA(get(i-1).MACD_Signal_8_17_9, get(i).get(StockEnum.MACD_8_17), 9);
-		} else {
-			get(i).MACD_Signal_8_17_9 = get(i).get(StockEnum.MACD_8_17);
+	/**
+	 * Makes room for indicators registered after the list was created
+	 */
+	private void ensureColumns() {
+		final int count = mRegistry.size();
+		if (mColumns.length < count) {
+			mColumns = Arrays.copyOf(mColumns, count);
+			if (mSteppers != null) {
+				mSteppers = Arrays.copyOf(mSteppers, count);
+			}
 		}
 	}
 
-	private void calcHigh_14(int i) {
-		if (i > 0) {
-			get(i).High_14 = calcHighest(i, 14);
-		} else {
-			get(i).High_14 = get(i).High;
+	private void discardIndicators() {
+		final float[][] columns = mColumns.clone();
+		for (int id = 0; id < columns.length; id++) {
+			if (!mRegistry.get(id).isSource()) {
+				columns[id] = null;
+			}
 		}
+		mColumns = columns;
+		mSteppers = null;
 	}
 
-	private void calcLow_14(int i) {
-		if (i > 0) {
-			get(i).Low_14 = calcLowest(i, 14);
-		} else {
-			get(i).Low_14 = get(i).Low;
+	/**
+	 * Calculates the column of the indicator, and of any of its inputs that are not calculated yet
+	 */
+	private synchronized float[] calculate(Indicator indicator) {
+		if (indicator.getRegistry() != mRegistry) {
+			throw new IllegalArgumentException(indicator + " is not registered in the registry of this list");
 		}
+		ensureColumns();
+		final int id = indicator.getId();
+		if (mColumns[id] == null) {
+			final boolean outermost = mPrefixSums == null;
+			if (outermost) {
+				mPrefixSums = new HashMap<Indicator, PrefixSum>();
+			}
+			try {
+				for (int i = 0; i < indicator.getInputCount(); i++) {
+					getColumn(indicator.getInput(i));
+				}
+				final float[] column = new float[mCapacity];
+				indicator.calculate(this, column);
+				final float[][] columns = mColumns.clone();
+				columns[id] = column;
+				mColumns = columns;
+			} finally {
+				if (outermost) {
+					mPrefixSums = null;
+				}
+			}
+		}
+		return mColumns[id];
 	}
 
-	private void calcStochastic_14_5(int i) {
-		calcHigh_14(i);
-		calcLow_14(i);
-		get(i).Stochastic_14_5 =
-				(get(i).Close - get(i).Low_14) / (get(i).High_14 - get(i).Low_14) * 100.0F;
+	/**
+	 * Returns true if the column of the indicator is calculated
+	 */
+	public boolean isCalculated(Indicator indicator) {
+		final float[][] columns = mColumns;
+		final int id = indicator.getId();
+		return indicator.getRegistry() == mRegistry && id < columns.length && columns[id] != null;
 	}
 
-	private void calcStochastic_14_5_Slow(int i) {
-		calcStochastic_14_5(i);
-		get(i).Stochastic_14_5_Slow = calcSMA(i, StockEnum.Stochastic_14_5, 5);
+	/**
+	 * Calculates every indicator of the registry for every day in the list, one column at a time.
+	 * Columns are otherwise calculated when first read, so this is only needed to calculate all of
+	 * them up front.
+	 */
+	public synchronized void calculateIndicators() {
+		ensureColumns();
+		mPrefixSums = new HashMap<Indicator, PrefixSum>();
+		try {
+			for (int id = 0; id < mColumns.length; id++) {
+				getColumn(mRegistry.get(id));
+			}
+		} finally {
+			mPrefixSums = null;
+		}
 	}
 
-	private void calcStochastic_Signal_14_5_Slow(int i) {
-		get(i).Stochastic_Signal_14_5_Slow = calcSMA(i, StockEnum.Stochastic_14_5_Slow, 5);
+	/**
+	 * Returns a copy of the list with room for at least capacity days. The calculated columns are
+	 * copied too, so days can be appended to the copy without calculating the list again and
+	 * without changing this list while other threads read it.
+	 */
+	public synchronized StockDataList copy(int capacity) {
+		capacity = Math.max(capacity, Math.max(mSize, 1));
+		final StockDataList copy = new StockDataList(mRegistry, Arrays.copyOf(mDates, capacity),
+				Arrays.copyOf(mColumns[mRegistry.close().getId()], capacity),
+				Arrays.copyOf(mColumns[mRegistry.high().getId()], capacity),
+				Arrays.copyOf(mColumns[mRegistry.low().getId()], capacity), mSize);
+		for (int id = 0; id < mColumns.length; id++) {
+			if (mColumns[id] != null && copy.mColumns[id] == null) {
+				copy.mColumns[id] = Arrays.copyOf(mColumns[id], capacity);
+			}
+		}
+		return copy;
 	}
 
-	private static float calcEMA(float prev, float curr, final int days) {
-		final float multiplier = 2.0f / (days + 1);
-		return curr * multiplier + prev * (1.0f - multiplier);
+	/**
+	 * Appends a new day and calculates the indicators that are already calculated for the previous
+	 * days, from the previous day and each indicator's running state, without going through the
+	 * rest of the list. Indicators that are not calculated yet stay that way.
+	 * <p>
+	 * The list is changed in place, so it must not be read by other threads while days are
+	 * appended. Append to a {@link #copy(int)} instead and replace the list with it.
+	 */
+	public synchronized void append(int date, float close, float high, float low) {
+		ensureColumns();
+		if (mSteppers == null) {
+			mSteppers = new Indicator.Stepper[mColumns.length];
+		}
+		for (int id = 0; id < mColumns.length; id++) {
+			if (mColumns[id] != null && mSteppers[id] == null && !mRegistry.get(id).isSource()) {
+				mSteppers[id] = mRegistry.get(id).newStepper(this);
+			}
+		}
+
+		// Add the day without discarding the calculated columns
+		ensureCapacity(mSize + 1);
+		mDates[mSize] = date;
+		mColumns[mRegistry.close().getId()][mSize] = close;
+		mColumns[mRegistry.high().getId()][mSize] = high;
+		mColumns[mRegistry.low().getId()][mSize] = low;
+		final int i = mSize++;
+
+		for (int id = 0; id < mSteppers.length; id++) {
+			if (mSteppers[id] != null) {
+				mColumns[id][i] = mSteppers[id].step(this, i);
+			}
+		}
 	}
 
-	private float calcSMA(int i, StockEnum e, int days) {
-		float res = 0;
-		int countDays = 0;
-		StockData data;
-		while (i >= 0 && countDays < days) {
-			data = get(i--);
-			res += data.get(e);
-			countDays++;
+	/**
+	 * Appends the days in newer that are dated after the last day of this list, using
+	 * {@link #append(int, float, float, float)}.
+	 *
+	 * @return the number of days appended
+	 */
+	public synchronized int append(StockDataList newer) {
+		final int lastDate = getLastDate();
+		int count = 0;
+		for (int i = 0; i < newer.size(); i++) {
+			if (newer.getDate(i) > lastDate) {
+				append(newer.getDate(i),
+						newer.get(i, StockEnum.Close),
+						newer.get(i, StockEnum.High),
+						newer.get(i, StockEnum.Low));
+				count++;
+			}
 		}
-		return res / countDays;
+		return count;
 	}
 
-	private float calcHighest(int i, int days) {
-		if (days > 1 && i > 0) {
-			return Math.max(get(i).High, calcHighest(i-1, days - 1));
-		} else {
-			return get(i).High;
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(mSize);
+		for (int i = 0; i < mSize; i++) {
+			out.writeInt(mDates[i]);
+			out.writeFloat(get(i, StockEnum.Close));
+			out.writeFloat(get(i, StockEnum.High));
+			out.writeFloat(get(i, StockEnum.Low));
 		}
 	}
 
-	private float calcLowest(int i, int days) {
-		if (days > 1 && i > 0) {
-			return Math.min(get(i).Low, calcHighest(i-1, days-1));
-		} else {
-			return get(i).Low;
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		final int size = in.readInt();
+		init(IndicatorRegistry.getDefault(), size);
+		for (int i = 0; i < size; i++) {
+			add(in.readInt(), in.readFloat(), in.readFloat(), in.readFloat());
 		}
 	}
 }
@@ -9,8 +9,8 @@ public class Symbol extends XMLParsableAdaptor {
 	private String mName = "";
 	private String mDisplayName = "";
 	private Float mRuleNo1Valuation;
-	private StockDataList mData;
-	private int mRetryCounter = 3;
+	// Replaced by the fetch threads while the main thread reads it
+	private volatile StockDataList mData;
 
 	public Symbol(String name, Float ruleNo1Valuation) {
 		mName = name;
@@ -75,10 +75,10 @@ public class Symbol extends XMLParsableAdaptor {
 	public CharSequence getDataText() {
 		if (hasStockData()) {
 			return String.format("Price %.2f (%+.2f%%), MACD %.2f (%+.2f)",
-					mData.get(mData.size()-1).Close,
-					(mData.get(mData.size()-1).Close-mData.get(mData.size()-2).Close)/mData.get(mData.size()-2).Close*100,
-					mData.get(mData.size()-1).get(StockEnum.MACD_12_26),
-					mData.get(mData.size()-2).get(StockEnum.MACD_12_26)-mData.get(mData.size()-1).get(StockEnum.MACD_12_26));
+					mData.get(mData.size()-1, StockEnum.Close),
+					(mData.get(mData.size()-1, StockEnum.Close)-mData.get(mData.size()-2, StockEnum.Close))/mData.get(mData.size()-2, StockEnum.Close)*100,
+					mData.get(mData.size()-1, StockEnum.MACD_12_26),
+					mData.get(mData.size()-2, StockEnum.MACD_12_26)-mData.get(mData.size()-1, StockEnum.MACD_12_26));
 		}
 		return "";
 	}
@@ -95,10 +95,6 @@ public class Symbol extends XMLParsableAdaptor {
 		return mRuleNo1Valuation != null;
 	}
 
-	public boolean doRetry() {
-		return mRetryCounter -- > 0;
-	}
-
 	public boolean isRuleNo1Buy() {
 		return isRuleNo1Buy(mData.size()-1);
 	}
@@ -128,21 +124,21 @@ public class Symbol extends XMLParsableAdaptor {
 	}
 
 	public boolean isRuleNo1StochasticAbove80() {
-		return mData.get(mData.size()-1).Stochastic_14_5_Slow >= 80;
+		return mData.get(mData.size()-1, StockEnum.Stochastic_14_5_Slow) >= 80;
 	}
 
 	public boolean isRuleNo1StochasticBelow20() {
-		return mData.get(mData.size()-1).Stochastic_14_5_Slow <= 20;
+		return mData.get(mData.size()-1, StockEnum.Stochastic_14_5_Slow) <= 20;
 	}
 
 	public boolean isValueAboveValuation() {
 		return mRuleNo1Valuation != null
-				&& mData.get(mData.size()-1).Close > mRuleNo1Valuation;
+				&& mData.get(mData.size()-1, StockEnum.Close) > mRuleNo1Valuation;
 	}
 
 	public boolean isValueBelowValuation50() {
 		return mRuleNo1Valuation != null
-				&& mData.get(mData.size()-1).Close < mRuleNo1Valuation/2F;
+				&& mData.get(mData.size()-1, StockEnum.Close) < mRuleNo1Valuation/2F;
 	}
 
 	public boolean wasRuleNo1SMALessThanValue() {
@@ -166,14 +162,14 @@ public class Symbol extends XMLParsableAdaptor {
 	}
 
 	private boolean isRuleNo1SMALessThanValue(int i) {
-		return mData.get(i).Close_SMA_10 <= mData.get(i).Close;
+		return mData.get(i, StockEnum.Close_SMA_10) <= mData.get(i, StockEnum.Close);
 	}
 
 	private boolean isRuleNo1StochasticPositive(int i) {
-		return mData.get(i).Stochastic_Signal_14_5_Slow <= mData.get(i).Stochastic_14_5_Slow;
+		return mData.get(i, StockEnum.Stochastic_Signal_14_5_Slow) <= mData.get(i, StockEnum.Stochastic_14_5_Slow);
 	}
 
 	private boolean isRuleNo1HistogramPositive(int i) {
-		return mData.get(i).get(StockEnum.MACD_Histogram_8_17_9) >= 0;
+		return mData.get(i, StockEnum.MACD_Histogram_8_17_9) >= 0;
 	}
 }
@@ -0,0 +1,474 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import android.util.Log;
+
+import com.sleepyduck.macdnotification.data.FetchMetrics.Counter;
+import com.sleepyduck.macdnotification.data.FetchMetrics.Phase;
+import com.sleepyduck.macdnotification.util.PrefixRecordingInputStream;
+import com.sleepyduck.macdnotification.util.TimedInputStream;
+
+/**
+ * Fetches the days and names from the Yahoo YQL web service, or from a server that answers the
+ * same queries such as the StubQuoteServer of the benchmarks. The requests to a host share its
+ * {@link AdaptiveLimiter} and {@link CircuitBreaker}. Each request has a deadline, and requests
+ * that are slower than most are hedged with a duplicate, see {@link #setHedging(boolean)}.
+ */
+public class YqlQuoteSource implements QuoteSource {
+	private static final String LOG_TAG = YqlQuoteSource.class.getSimpleName();
+	public static final String DEFAULT_URL = "http://query.yahooapis.com/v1/public/yql";
+	// Bytes of a response that are logged if it can not be parsed
+	private static final int LOG_PREFIX_LENGTH = 1024;
+	// Too Many Requests, not in the HttpStatus of Android
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+	public static final long DEFAULT_DEADLINE_MILLIS = 30 * 1000;
+	// Percentile of the latencies of the host after which a request is hedged
+	private static final double HEDGE_PERCENTILE = 95;
+
+	private final String mUrl;
+	private final String mHost;
+	private volatile long mDeadlineMillis = DEFAULT_DEADLINE_MILLIS;
+	private volatile boolean mHedging = true;
+
+	public YqlQuoteSource() {
+		this(DEFAULT_URL);
+	}
+
+	/**
+	 * Creates a source for the YQL service at the url, such as {@link #DEFAULT_URL}
+	 */
+	public YqlQuoteSource(String url) {
+		mUrl = url;
+		mHost = URI.create(url).getHost();
+	}
+
+	/**
+	 * Caps the requests to the host of the source to a number per second, or 0 for no cap, see
+	 * {@link AdaptiveLimiter#setMaxRequestsPerSecond(double)}
+	 */
+	public void setMaxRequestsPerSecond(double requestsPerSecond) {
+		AdaptiveLimiter.get(mHost).setMaxRequestsPerSecond(requestsPerSecond);
+	}
+
+	/**
+	 * Sets the time a request may take, including reading the response, before it is aborted
+	 */
+	public void setDeadline(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("Deadline must be positive: " + millis);
+		}
+		mDeadlineMillis = millis;
+	}
+
+	/**
+	 * Sets if a duplicate is sent for a request that is slower than most, see
+	 * {@link #fetch(URI, String[], ResponseReader)}
+	 */
+	public void setHedging(boolean hedging) {
+		mHedging = hedging;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return CircuitBreaker.get(mHost).isAvailable();
+	}
+
+	@Override
+	public Map<String, StockDataList> fetchHistory(String[] symbols, int startDate, int endDate) {
+		final URI uri = buildHistoryURI(symbols, startDate, endDate);
+		if (uri == null) {
+			return null;
+		}
+		return fetch(uri, symbols, new ResponseReader<Map<String, StockDataList>>() {
+			@Override
+			public Map<String, StockDataList> read(InputStream in) {
+				return parseData(in);
+			}
+		});
+	}
+
+	/**
+	 * Fetches the names of all the symbols in one query
+	 */
+	@Override
+	public Map<String, String> fetchNames(final String[] symbols) {
+		final URI uri = buildNamesURI(symbols);
+		if (uri == null) {
+			return null;
+		}
+		return fetch(uri, symbols, new ResponseReader<Map<String, String>>() {
+			@Override
+			public Map<String, String> read(InputStream in) throws IOException {
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+				final StringBuilder sb = new StringBuilder("");
+				String l;
+				while ((l = reader.readLine()) != null) {
+					sb.append(l).append("\n");
+				}
+				return parseNames(sb.toString(), symbols);
+			}
+		});
+	}
+
+	private URI buildHistoryURI(String[] symbols, int startDate, int endDate) {
+		return buildURI("select Symbol,Date,Adj_Close,High,Low from yahoo.finance.historicaldata where startDate=\""
+				+ formatDate(startDate) + "\" AND symbol in (" + toList(symbols) + ") AND endDate=\""
+				+ formatDate(endDate) + "\"");
+	}
+
+	private URI buildNamesURI(String[] symbols) {
+		return buildURI("select Symbol,Name from yahoo.finance.quote where symbol in (" + toList(symbols) + ")");
+	}
+
+	/**
+	 * Returns the symbols quoted and separated by commas, for the in clause of a query
+	 */
+	private static String toList(String[] symbols) {
+		final StringBuilder symbolList = new StringBuilder();
+		for (String symbol : symbols) {
+			if (symbolList.length() > 0) {
+				symbolList.append(",");
+			}
+			symbolList.append("\"").append(symbol).append("\"");
+		}
+		return symbolList.toString();
+	}
+
+	private URI buildURI(String query) {
+		try {
+			query = query.replace(" ", "%20").replace("=", "%3D").replace("\"", "%22").replace("^", "%5E").replace(",", "%2C");
+			query = mUrl + "?q=" + query;
+			query += "&env=store%3A%2F%2Fdatatables.org%2Falltableswithkeys";
+			return new URI(query);
+		} catch (final URISyntaxException e) {
+			Log.e(LOG_TAG, "", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the date on the form yyyy-MM-dd
+	 */
+	private static String formatDate(int date) {
+		return String.format("%04d-%02d-%02d", date / 10000, date / 100 % 100, date % 100);
+	}
+
+	private interface ResponseReader<T> {
+		/**
+		 * Returns the result read from the response, or null if it could not be read
+		 */
+		T read(InputStream in) throws IOException;
+	}
+
+	/**
+	 * Fetches the uri and reads the response while it is downloaded. The request waits for the
+	 * {@link AdaptiveLimiter} of the host, and is refused while its {@link CircuitBreaker} is open.
+	 * <p>
+	 * The request is aborted if it is not done by the deadline. With hedging, a duplicate is sent
+	 * if the request is still outstanding after the 95th percentile of the latencies of the host
+	 * and the hedge budget of the limiter allows it, and the first to answer wins.
+	 */
+	private <T> T fetch(URI uri, String[] symbols, ResponseReader<T> reader) {
+		final AdaptiveLimiter limiter = AdaptiveLimiter.get(uri.getHost());
+		try {
+			limiter.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		final CircuitBreaker breaker = CircuitBreaker.get(uri.getHost());
+		if (!breaker.allowRequest()) {
+			limiter.onDropped();
+			Log.d(LOG_TAG, "Not fetching from " + uri.getHost() + " while it is failing");
+			return null;
+		}
+		final Request<T> request = new Request<T>(uri, symbols, reader, mDeadlineMillis);
+		final long hedgeDelay = mHedging ? limiter.getLatencyPercentile(HEDGE_PERCENTILE) : -1;
+		ScheduledFuture<?> hedge = null;
+		if (hedgeDelay >= 0) {
+			hedge = FetchExecutor.scheduleDirect(new Runnable() {
+				@Override
+				public void run() {
+					if (!request.isDone() && limiter.tryAcquireHedge()) {
+						Log.d(LOG_TAG, "Hedging a request to " + request.mUri.getHost() + " after " + hedgeDelay + " ms");
+						FetchMetrics.get().add(Counter.HEDGES, request.mSymbols, request.mSymbols.length);
+						attempt(request, limiter, breaker);
+					}
+				}
+			}, hedgeDelay);
+		}
+		final T result = attempt(request, limiter, breaker);
+		if (hedge != null) {
+			hedge.cancel(false);
+		}
+		// The hedge may have won, or still be running after this attempt failed
+		return result != null ? result : request.await();
+	}
+
+	/**
+	 * Sends one request for the uri of the request, which is aborted if another attempt answers
+	 * first or the deadline passes. The permit of the limiter must already be taken.
+	 */
+	private <T> T attempt(Request<T> request, AdaptiveLimiter limiter, CircuitBreaker breaker) {
+		final HttpGet get = new HttpGet();
+		get.setURI(request.mUri);
+		if (!request.start(get)) {
+			limiter.onDropped();
+			return null;
+		}
+		final FetchMetrics metrics = FetchMetrics.get();
+		metrics.add(Counter.REQUESTS, request.mSymbols, request.mSymbols.length);
+		final long start = System.currentTimeMillis();
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		final ScheduledFuture<?> deadline = FetchExecutor.runOnTimer(new Runnable() {
+			@Override
+			public void run() {
+				timedOut.set(true);
+				get.abort();
+			}
+		}, Math.max(0, request.mDeadline - start));
+		final HttpClient client = SharedHttpClient.acquire();
+		HttpEntity entity = null;
+		TimedInputStream in = null;
+		T result = null;
+		boolean overload = false;
+		try {
+			final long sent = System.nanoTime();
+			final HttpResponse response = client.execute(get);
+			metrics.record(Phase.CONNECT, System.nanoTime() - sent);
+			entity = response.getEntity();
+			final int status = response.getStatusLine().getStatusCode();
+			if (status == SC_TOO_MANY_REQUESTS || status >= 500) {
+				Log.d(LOG_TAG, "Status " + status + " from " + request.mUri.getHost());
+				overload = true;
+				get.abort();
+				return null;
+			}
+			in = new TimedInputStream(entity.getContent());
+			final long read = System.nanoTime();
+			result = request.mReader.read(in);
+			metrics.record(Phase.DOWNLOAD, in.getReadNanos());
+			metrics.record(Phase.PARSE, System.nanoTime() - read - in.getReadNanos());
+			if (result == null) {
+				// Do not download the rest of a response that can not be read
+				get.abort();
+			}
+			return result;
+		} catch (final InterruptedIOException e) {
+			// Timed out
+			Log.e(LOG_TAG, "", e);
+			overload = true;
+			get.abort();
+			return null;
+		} catch (final IOException e) {
+			if (!request.isDone()) {
+				Log.e(LOG_TAG, "", e);
+			}
+			get.abort();
+			return null;
+		} finally {
+			deadline.cancel(false);
+			if (in != null) {
+				metrics.add(Counter.BYTES, request.mSymbols, in.getCount());
+			}
+			// Gives the connection back to the pool
+			if (entity != null) {
+				try {
+					entity.consumeContent();
+				} catch (final IOException e) {
+					Log.e(LOG_TAG, "", e);
+				}
+			}
+			SharedHttpClient.release(client);
+			final boolean lost = request.finish(get, result);
+			if (result != null) {
+				breaker.onSuccess();
+				limiter.onSuccess(System.currentTimeMillis() - start);
+			} else if (lost) {
+				// At least as slow as the request has been so far
+				limiter.onHedged(System.currentTimeMillis() - request.mStart);
+			} else {
+				breaker.onFailure();
+				if (timedOut.get()) {
+					Log.d(LOG_TAG, "Aborted a request to " + request.mUri.getHost() + " at its deadline");
+					metrics.add(Counter.TIMEOUTS, request.mSymbols, request.mSymbols.length);
+				}
+				if (overload || timedOut.get()) {
+					limiter.onOverload();
+				} else {
+					limiter.onDropped();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A request to a uri and the attempts that are sent for it, the first result of which is
+	 * kept and aborts the others
+	 */
+	private static final class Request<T> {
+		private final URI mUri;
+		// The symbols the request is for, that its metrics are counted for
+		private final String[] mSymbols;
+		private final ResponseReader<T> mReader;
+		private final long mStart = System.currentTimeMillis();
+		private final long mDeadline;
+		private final List<HttpGet> mRunning = new ArrayList<HttpGet>(2);
+		private T mResult = null;
+		private boolean mClosed = false;
+
+		private Request(URI uri, String[] symbols, ResponseReader<T> reader, long deadlineMillis) {
+			mUri = uri;
+			mSymbols = symbols;
+			mReader = reader;
+			mDeadline = mStart + deadlineMillis;
+		}
+
+		/**
+		 * Returns false if the attempt should not be sent, because the request is done
+		 */
+		private synchronized boolean start(HttpGet get) {
+			if (mResult != null || mClosed) {
+				return false;
+			}
+			mRunning.add(get);
+			return true;
+		}
+
+		/**
+		 * Ends the attempt. A result aborts the other attempts.
+		 *
+		 * @return true if the attempt failed because another attempt answered first
+		 */
+		private synchronized boolean finish(HttpGet get, T result) {
+			mRunning.remove(get);
+			if (result != null && mResult == null) {
+				mResult = result;
+				for (HttpGet other : mRunning) {
+					other.abort();
+				}
+			}
+			notifyAll();
+			return result == null && mResult != null;
+		}
+
+		private synchronized boolean isDone() {
+			return mResult != null;
+		}
+
+		/**
+		 * Waits for the attempts that are running, and keeps new ones from starting
+		 *
+		 * @return the result, or null if no attempt answered
+		 */
+		private synchronized T await() {
+			try {
+				while (mResult == null && !mRunning.isEmpty()) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			mClosed = true;
+			return mResult;
+		}
+	}
+
+	/**
+	 * Parses the quotes of a response into one list per symbol with a {@link QuoteParser}, mapped
+	 * by {@link StockDataFetcher#getKey(String)} of the Symbol attribute of the quotes. The stream
+	 * is parsed as it is read, and only the first {@value #LOG_PREFIX_LENGTH} bytes are kept, to
+	 * be logged if it can not be parsed.
+	 */
+	Map<String, StockDataList> parseData(InputStream in) {
+		final PrefixRecordingInputStream recordingIn = new PrefixRecordingInputStream(in, LOG_PREFIX_LENGTH);
+		try {
+			return new QuoteParser(recordingIn).parse();
+		} catch (final Exception e) {
+			Log.e(LOG_TAG, "", e);
+			Log.e(LOG_TAG, "Data: " + recordingIn.getPrefix());
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the Symbol and Name of each quote of a response. The quote of a single symbol is
+	 * mapped to it even if it does not name it.
+	 */
+	private Map<String, String> parseNames(String uriData, final String[] symbols) {
+		final Map<String, String> names = new HashMap<String, String>();
+		try {
+			final SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+			parser.parse(new InputSource(new StringReader(uriData)), new DefaultHandler() {
+				private String symbol = null;
+				// The characters of the current element, which may be reported in several parts
+				private final StringBuilder text = new StringBuilder();
+				private String name = null;
+
+				@Override
+				public void characters(final char[] ch, final int start, final int length) throws SAXException {
+					text.append(ch, start, length);
+				}
+
+				@Override
+				public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
+					super.startElement(uri, localName, qName, attributes);
+					text.setLength(0);
+					if (qName.equalsIgnoreCase("quote")) {
+						symbol = attributes.getValue("symbol");
+						name = "";
+					}
+				}
+
+				@Override
+				public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+					super.endElement(uri, localName, qName);
+					if (qName.equalsIgnoreCase("symbol") && symbol == null) {
+						symbol = text.toString().trim();
+					} else if (qName.equalsIgnoreCase("name")) {
+						name = text.toString().trim();
+					} else if (qName.equalsIgnoreCase("quote")) {
+						if (symbol == null && symbols.length == 1) {
+							symbol = symbols[0];
+						}
+						if (symbol != null) {
+							names.put(StockDataFetcher.getKey(symbol), name);
+						}
+						symbol = null;
+					}
+				}
+			});
+		} catch (final Exception e) {
+			Log.e(LOG_TAG, "", e);
+			Log.e(LOG_TAG, "Data: " + uriData);
+			return null;
+		}
+		return names;
+	}
+}
@@ -0,0 +1,31 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * The first input minus the second, such as a MACD line or histogram
+ */
+class Difference extends Indicator {
+
+	Difference(Indicator minuend, Indicator subtrahend) {
+		super("Difference(" + minuend.getKey() + "," + subtrahend.getKey() + ")", minuend, subtrahend);
+	}
+
+	@Override
+	public void calculate(Series series, float[] dst) {
+		final float[] a = series.getColumn(getInput(0));
+		final float[] b = series.getColumn(getInput(1));
+		final int size = series.size();
+		for (int i = 0; i < size; i++) {
+			dst[i] = a[i] - b[i];
+		}
+	}
+
+	@Override
+	public Stepper newStepper(Series series) {
+		return new Stepper() {
+			@Override
+			public float step(Series series, int i) {
+				return series.getColumn(getInput(0))[i] - series.getColumn(getInput(1))[i];
+			}
+		};
+	}
+}
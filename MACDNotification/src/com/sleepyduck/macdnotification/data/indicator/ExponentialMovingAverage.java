@@ -0,0 +1,51 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * Exponential moving average, starting from the first value of the source
+ */
+class ExponentialMovingAverage extends Indicator {
+	private final int mDays;
+
+	ExponentialMovingAverage(Indicator source, int days) {
+		super("EMA(" + source.getKey() + "," + days + ")", source);
+		if (days < 1) {
+			throw new IllegalArgumentException("Days must be positive: " + days);
+		}
+		mDays = days;
+	}
+
+	@Override
+	public void calculate(Series series, float[] dst) {
+		final float[] src = series.getColumn(getInput(0));
+		final int size = series.size();
+		for (int i = 0; i < size; i++) {
+			dst[i] = calculate(src, dst, i);
+		}
+	}
+
+	@Override
+	public int getLookback(double tolerance) {
+		// The weight of the day k days back is (1 - multiplier)^k
+		final double multiplier = 2.0 / (mDays + 1);
+		final int days = mDays > 1 ? (int) Math.ceil(Math.log(tolerance) / Math.log(1.0 - multiplier)) : 0;
+		return super.getLookback(tolerance) + days;
+	}
+
+	@Override
+	public Stepper newStepper(Series series) {
+		return new Stepper() {
+			@Override
+			public float step(Series series, int i) {
+				return calculate(series.getColumn(getInput(0)), series.getColumn(ExponentialMovingAverage.this), i);
+			}
+		};
+	}
+
+	private float calculate(float[] src, float[] dst, int i) {
+		if (i > 0) {
+			final float multiplier = 2.0f / (mDays + 1);
+			return src[i] * multiplier + dst[i-1] * (1.0f - multiplier);
+		}
+		return src[i];
+	}
+}
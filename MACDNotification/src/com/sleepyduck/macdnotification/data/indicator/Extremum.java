@@ -0,0 +1,43 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * Highest or lowest value over a number of days. The first days use the days available.
+ */
+class Extremum extends Indicator {
+	private final int mDays;
+	private final boolean mMaximum;
+
+	Extremum(Indicator source, int days, boolean maximum) {
+		super((maximum ? "Highest(" : "Lowest(") + source.getKey() + "," + days + ")", source);
+		if (days < 1) {
+			throw new IllegalArgumentException("Days must be positive: " + days);
+		}
+		mDays = days;
+		mMaximum = maximum;
+	}
+
+	@Override
+	public void calculate(Series series, float[] dst) {
+		RollingExtremum.calculate(series.getColumn(getInput(0)), series.size(), mDays, mMaximum, dst);
+	}
+
+	@Override
+	public int getLookback(double tolerance) {
+		return super.getLookback(tolerance) + mDays - 1;
+	}
+
+	@Override
+	public Stepper newStepper(Series series) {
+		final RollingExtremum extremum = new RollingExtremum(mDays, mMaximum);
+		final float[] src = series.getColumn(getInput(0));
+		for (int i = Math.max(0, series.size() - mDays); i < series.size(); i++) {
+			extremum.add(src[i]);
+		}
+		return new Stepper() {
+			@Override
+			public float step(Series series, int i) {
+				return extremum.add(series.getColumn(getInput(0))[i]);
+			}
+		};
+	}
+}
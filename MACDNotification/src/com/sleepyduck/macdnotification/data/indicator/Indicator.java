@@ -0,0 +1,104 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * A node in the dependency graph of an {@link IndicatorRegistry}. An indicator calculates one
+ * column of a {@link Series} from the columns of its inputs, and is identified by a key that
+ * describes its type, inputs and parameters, for example "EMA(Close,12)". Indicators with the
+ * same key are only registered, and calculated, once.
+ */
+public abstract class Indicator {
+	private final String mKey;
+	private final Indicator[] mInputs;
+	private IndicatorRegistry mRegistry = null;
+	private int mId = -1;
+
+	protected Indicator(String key, Indicator... inputs) {
+		mKey = key;
+		mInputs = inputs;
+	}
+
+	public String getKey() {
+		return mKey;
+	}
+
+	public Indicator getInput(int i) {
+		return mInputs[i];
+	}
+
+	public int getInputCount() {
+		return mInputs.length;
+	}
+
+	/**
+	 * Returns the registry this indicator was registered in, or null
+	 */
+	public IndicatorRegistry getRegistry() {
+		return mRegistry;
+	}
+
+	/**
+	 * Returns the index of this indicator in its registry. The inputs of an indicator always have
+	 * lower ids than the indicator itself.
+	 */
+	public int getId() {
+		return mId;
+	}
+
+	/**
+	 * Returns true for the price columns that are read from the quote source rather than
+	 * calculated
+	 */
+	public boolean isSource() {
+		return false;
+	}
+
+	/**
+	 * Returns the number of days before a day that its value depends on, with days whose weight
+	 * is below tolerance left out. A series needs this many days before the first day that is
+	 * used for the value to have converged.
+	 */
+	public int getLookback(double tolerance) {
+		if (!(tolerance > 0 && tolerance < 1)) {
+			throw new IllegalArgumentException("Tolerance must be between 0 and 1: " + tolerance);
+		}
+		int lookback = 0;
+		for (Indicator input : mInputs) {
+			lookback = Math.max(lookback, input.getLookback(tolerance));
+		}
+		return lookback;
+	}
+
+	void register(IndicatorRegistry registry, int id) {
+		mRegistry = registry;
+		mId = id;
+	}
+
+	/**
+	 * Calculates the first series.size() values of the column. The columns of the inputs are
+	 * calculated before this is called.
+	 */
+	public abstract void calculate(Series series, float[] dst);
+
+	/**
+	 * Returns a {@link Stepper} that continues the column from day series.size(), set up from the
+	 * days already calculated
+	 */
+	public abstract Stepper newStepper(Series series);
+
+	@Override
+	public String toString() {
+		return mKey;
+	}
+
+	/**
+	 * Calculates one day at a time, keeping whatever running state the indicator needs
+	 */
+	public interface Stepper {
+
+		/**
+		 * Returns the value of day i. The inputs of day i and the previous days of this column
+		 * are already calculated.
+		 */
+		public float step(Series series, int i);
+	}
+}
@@ -0,0 +1,215 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The set of indicators calculated for a {@link Series}, declared at runtime. Indicators are
+ * deduplicated by key, so an input shared by several indicators, such as the EMA-12 of three MACD
+ * variants, is only registered and calculated once. Since the inputs of an indicator must be
+ * registered before it, the registration order is also a valid calculation order.
+ */
+public class IndicatorRegistry {
+	private static final IndicatorRegistry sDefault = new IndicatorRegistry();
+
+	private final Map<String, Indicator> mIndicatorsByKey = new HashMap<String, Indicator>();
+	private volatile Indicator[] mIndicators = new Indicator[0];
+
+	private final Indicator mClose;
+	private final Indicator mHigh;
+	private final Indicator mLow;
+
+	public IndicatorRegistry() {
+		mClose = register(new Source("Close"));
+		mHigh = register(new Source("High"));
+		mLow = register(new Source("Low"));
+	}
+
+	/**
+	 * Returns the registry shared by all series that are not given one explicitly
+	 */
+	public static IndicatorRegistry getDefault() {
+		return sDefault;
+	}
+
+	/**
+	 * Registers the indicator, or returns the already registered indicator with the same key
+	 */
+	public synchronized Indicator register(Indicator indicator) {
+		final Indicator registered = mIndicatorsByKey.get(indicator.getKey());
+		if (registered != null) {
+			return registered;
+		}
+		if (indicator.getRegistry() != null) {
+			throw new IllegalArgumentException(indicator + " is already registered");
+		}
+		for (int i = 0; i < indicator.getInputCount(); i++) {
+			if (indicator.getInput(i).getRegistry() != this) {
+				throw new IllegalArgumentException("Input " + indicator.getInput(i) + " of " + indicator
+						+ " is not registered here");
+			}
+		}
+		final Indicator[] indicators = Arrays.copyOf(mIndicators, mIndicators.length + 1);
+		indicator.register(this, mIndicators.length);
+		indicators[mIndicators.length] = indicator;
+		mIndicatorsByKey.put(indicator.getKey(), indicator);
+		mIndicators = indicators;
+		return indicator;
+	}
+
+	/**
+	 * Returns the number of registered indicators, including the sources
+	 */
+	public int size() {
+		return mIndicators.length;
+	}
+
+	/**
+	 * Returns the indicator with the given id
+	 */
+	public Indicator get(int id) {
+		return mIndicators[id];
+	}
+
+	/**
+	 * Returns the indicator with the given key, or null
+	 */
+	public synchronized Indicator get(String key) {
+		return mIndicatorsByKey.get(key);
+	}
+
+	/**
+	 * Returns the largest lookback of the registered indicators, see
+	 * {@link Indicator#getLookback(double)}
+	 */
+	public int getLookback(double tolerance) {
+		int lookback = 0;
+		for (Indicator indicator : mIndicators) {
+			lookback = Math.max(lookback, indicator.getLookback(tolerance));
+		}
+		return lookback;
+	}
+
+	public Indicator close() {
+		return mClose;
+	}
+
+	public Indicator high() {
+		return mHigh;
+	}
+
+	public Indicator low() {
+		return mLow;
+	}
+
+	public Indicator ema(Indicator source, int days) {
+		return register(new ExponentialMovingAverage(source, days));
+	}
+
+	public Indicator ema(int days) {
+		return ema(mClose, days);
+	}
+
+	public Indicator sma(Indicator source, int days) {
+		return register(new SimpleMovingAverage(source, days));
+	}
+
+	public Indicator sma(int days) {
+		return sma(mClose, days);
+	}
+
+	public Indicator highest(Indicator source, int days) {
+		return register(new Extremum(source, days, true));
+	}
+
+	public Indicator lowest(Indicator source, int days) {
+		return register(new Extremum(source, days, false));
+	}
+
+	public Indicator difference(Indicator minuend, Indicator subtrahend) {
+		return register(new Difference(minuend, subtrahend));
+	}
+
+	/**
+	 * Returns the MACD line, the fast EMA of the close minus the slow
+	 */
+	public Indicator macd(int fast, int slow) {
+		return difference(ema(fast), ema(slow));
+	}
+
+	public Macd macd(int fast, int slow, int signal) {
+		return new Macd(this, fast, slow, signal);
+	}
+
+	public Stochastic stochastic(int days, int slowing) {
+		return new Stochastic(this, days, slowing);
+	}
+
+	/**
+	 * The indicators of a MACD(fast, slow, signal)
+	 */
+	public static final class Macd {
+		private final Indicator mLine;
+		private final Indicator mSignal;
+		private final Indicator mHistogram;
+
+		private Macd(IndicatorRegistry registry, int fast, int slow, int signal) {
+			mLine = registry.macd(fast, slow);
+			mSignal = registry.ema(mLine, signal);
+			mHistogram = registry.difference(mLine, mSignal);
+		}
+
+		public Indicator getLine() {
+			return mLine;
+		}
+
+		public Indicator getSignal() {
+			return mSignal;
+		}
+
+		public Indicator getHistogram() {
+			return mHistogram;
+		}
+	}
+
+	/**
+	 * The indicators of a Stochastic(days, slowing). The slow %K is the SMA of the fast %K, and
+	 * the signal is the SMA of the slow %K, both over the slowing days.
+	 */
+	public static final class Stochastic {
+		private final Indicator mHighest;
+		private final Indicator mLowest;
+		private final Indicator mFast;
+		private final Indicator mSlow;
+		private final Indicator mSignal;
+
+		private Stochastic(IndicatorRegistry registry, int days, int slowing) {
+			mHighest = registry.highest(registry.high(), days);
+			mLowest = registry.lowest(registry.low(), days);
+			mFast = registry.register(new StochasticOscillator(registry.close(), mHighest, mLowest));
+			mSlow = registry.sma(mFast, slowing);
+			mSignal = registry.sma(mSlow, slowing);
+		}
+
+		public Indicator getHighest() {
+			return mHighest;
+		}
+
+		public Indicator getLowest() {
+			return mLowest;
+		}
+
+		public Indicator getFast() {
+			return mFast;
+		}
+
+		public Indicator getSlow() {
+			return mSlow;
+		}
+
+		public Indicator getSignal() {
+			return mSignal;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * Running sums of a source column, built in one pass, that give the sum or average of any range
+ * of days in constant time. One instance can serve every simple moving average of the same
+ * source, whatever their lengths.
+ * <p>
+ * The sums are kept as doubles, which hold the sums of float prices and indicator values exactly,
+ * so an average is the exact one rounded to a float, and the same as that of {@link RollingSum}.
+ * The averages used to be summed as floats, rounding at each addition, and differ from these by
+ * up to 4 ulps. A comparison with an average, such as a close at or above its SMA, only comes out
+ * differently when the two sides are equal or an ulp apart, mostly on flat days, and then it is
+ * the new result that is right. The SmaCheck of the benchmarks measures both. NaN and infinite
+ * values are counted instead of summed, and give the same result as summing them would.
+ */
+public class PrefixSum {
+	private final int mSize;
+	// mSums[i] is the sum of the finite values before day i
+	private final double[] mSums;
+	// Same for the number of NaN and infinite values, null if there are none
+	private int[] mNaN;
+	private int[] mPositiveInfinity;
+	private int[] mNegativeInfinity;
+
+	public PrefixSum(float[] src, int size) {
+		mSize = size;
+		mSums = new double[size + 1];
+		double sum = 0;
+		int nan = 0;
+		int positiveInfinity = 0;
+		int negativeInfinity = 0;
+		for (int i = 0; i < size; i++) {
+			final float value = src[i];
+			if (Float.isNaN(value)) {
+				nan++;
+			} else if (value == Float.POSITIVE_INFINITY) {
+				positiveInfinity++;
+			} else if (value == Float.NEGATIVE_INFINITY) {
+				negativeInfinity++;
+			} else {
+				sum += value;
+			}
+			mSums[i + 1] = sum;
+			if (mNaN == null && nan + positiveInfinity + negativeInfinity > 0) {
+				// First non-finite value, the counts before it are all zero
+				mNaN = new int[size + 1];
+				mPositiveInfinity = new int[size + 1];
+				mNegativeInfinity = new int[size + 1];
+			}
+			if (mNaN != null) {
+				mNaN[i + 1] = nan;
+				mPositiveInfinity[i + 1] = positiveInfinity;
+				mNegativeInfinity[i + 1] = negativeInfinity;
+			}
+		}
+	}
+
+	/**
+	 * Writes the simple moving average of the first size values in src to dst. The first values
+	 * use the days available.
+	 */
+	public static void average(float[] src, int size, int length, float[] dst) {
+		new PrefixSum(src, size).average(length, dst);
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns the sum of the days from, inclusive, to to, exclusive
+	 */
+	public double getSum(int from, int to) {
+		if (from < 0 || to > mSize || from > to) {
+			throw new IndexOutOfBoundsException("Invalid range " + from + "-" + to + ", size is " + mSize);
+		}
+		if (mNaN != null) {
+			final int nan = mNaN[to] - mNaN[from];
+			final int positiveInfinity = mPositiveInfinity[to] - mPositiveInfinity[from];
+			final int negativeInfinity = mNegativeInfinity[to] - mNegativeInfinity[from];
+			if (nan > 0 || (positiveInfinity > 0 && negativeInfinity > 0)) {
+				return Double.NaN;
+			} else if (positiveInfinity > 0) {
+				return Double.POSITIVE_INFINITY;
+			} else if (negativeInfinity > 0) {
+				return Double.NEGATIVE_INFINITY;
+			}
+		}
+		return mSums[to] - mSums[from];
+	}
+
+	public float getAverage(int from, int to) {
+		return (float) (getSum(from, to) / (to - from));
+	}
+
+	/**
+	 * Writes the simple moving average over length days to dst. The first values use the days
+	 * available.
+	 */
+	public void average(int length, float[] dst) {
+		if (length < 1) {
+			throw new IllegalArgumentException("Window length must be positive: " + length);
+		}
+		for (int i = 0; i < mSize; i++) {
+			dst[i] = getAverage(Math.max(0, i + 1 - length), i + 1);
+		}
+	}
+}
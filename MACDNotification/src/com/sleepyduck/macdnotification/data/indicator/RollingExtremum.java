@@ -0,0 +1,104 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * Keeps the highest or lowest of the last values added, up to a fixed window length, using a
+ * monotonic deque. Each value is added and removed at most once, so a whole series takes one
+ * linear pass whatever the window length.
+ * <p>
+ * As with {@link Math#max(float, float)}, the result is NaN while a NaN value is inside the window.
+ */
+public class RollingExtremum {
+	private final int mLength;
+	private final boolean mMaximum;
+
+	// Ring buffer of candidate values and the index they were added at, ordered so that the first
+	// candidate is the current extremum
+	private final float[] mValues;
+	private final int[] mIndices;
+	private int mHead = 0;
+	private int mCandidates = 0;
+
+	private int mCount = 0;
+	private int mLastNaN = -1;
+
+	public RollingExtremum(int length, boolean maximum) {
+		if (length < 1) {
+			throw new IllegalArgumentException("Window length must be positive: " + length);
+		}
+		mLength = length;
+		mMaximum = maximum;
+		mValues = new float[length];
+		mIndices = new int[length];
+	}
+
+	/**
+	 * Writes the rolling maximum, or minimum, of the first size values in src to dst. The first
+	 * values use the days available.
+	 */
+	public static void calculate(float[] src, int size, int length, boolean maximum, float[] dst) {
+		final RollingExtremum extremum = new RollingExtremum(length, maximum);
+		for (int i = 0; i < size; i++) {
+			dst[i] = extremum.add(src[i]);
+		}
+	}
+
+	public int getLength() {
+		return mLength;
+	}
+
+	public boolean isMaximum() {
+		return mMaximum;
+	}
+
+	public void reset() {
+		mHead = 0;
+		mCandidates = 0;
+		mCount = 0;
+		mLastNaN = -1;
+	}
+
+	/**
+	 * Adds a value, dropping the oldest one if the window is full, and returns the new extremum
+	 */
+	public float add(float value) {
+		final int index = mCount++;
+
+		// Drop the first candidate if it has left the window
+		if (mCandidates > 0 && index - mIndices[mHead] >= mLength) {
+			mHead = (mHead + 1) % mLength;
+			mCandidates--;
+		}
+
+		if (Float.isNaN(value)) {
+			mLastNaN = index;
+		} else {
+			// Candidates that are not better than the new value can never be the extremum again
+			while (mCandidates > 0 && !isBetter(mValues[last()], value)) {
+				mCandidates--;
+			}
+			final int tail = (mHead + mCandidates) % mLength;
+			mValues[tail] = value;
+			mIndices[tail] = index;
+			mCandidates++;
+		}
+		return get();
+	}
+
+	/**
+	 * Returns the extremum of the values in the window, or NaN if no value has been added
+	 */
+	public float get() {
+		if (mCount == 0 || (mLastNaN >= 0 && mCount - 1 - mLastNaN < mLength)) {
+			return Float.NaN;
+		}
+		return mValues[mHead];
+	}
+
+	private int last() {
+		return (mHead + mCandidates - 1) % mLength;
+	}
+
+	private boolean isBetter(float candidate, float value) {
+		return mMaximum ? candidate > value : candidate < value;
+	}
+}
@@ -0,0 +1,101 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * Keeps the sum of the last values added, up to a fixed window length, so that a simple moving
+ * average can be updated in constant time for each new value.
+ * <p>
+ * The sum is kept as a double. For float input over the short windows used here it is exact, so
+ * adding a value and removing it again leaves no rounding error behind, and the averages are the
+ * same as those of {@link PrefixSum}, see there for how they compare to float sums. NaN and
+ * infinite values are counted instead of summed, and give the same result as summing them would,
+ * but only while they are inside the window.
+ */
+public class RollingSum {
+	private final float[] mWindow;
+	private int mCount = 0;
+	private int mNext = 0;
+	private double mSum = 0;
+	private int mNaN = 0;
+	private int mPositiveInfinity = 0;
+	private int mNegativeInfinity = 0;
+
+	public RollingSum(int length) {
+		if (length < 1) {
+			throw new IllegalArgumentException("Window length must be positive: " + length);
+		}
+		mWindow = new float[length];
+	}
+
+	public int getLength() {
+		return mWindow.length;
+	}
+
+	/**
+	 * Returns the number of values in the window, at most {@link #getLength()}
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	public void reset() {
+		mCount = 0;
+		mNext = 0;
+		mSum = 0;
+		mNaN = 0;
+		mPositiveInfinity = 0;
+		mNegativeInfinity = 0;
+	}
+
+	/**
+	 * Adds a value, dropping the oldest one if the window is full, and returns the new average
+	 */
+	public float add(float value) {
+		if (mCount == mWindow.length) {
+			remove(mWindow[mNext]);
+		} else {
+			mCount++;
+		}
+		mWindow[mNext] = value;
+		mNext = (mNext + 1) % mWindow.length;
+		if (Float.isNaN(value)) {
+			mNaN++;
+		} else if (value == Float.POSITIVE_INFINITY) {
+			mPositiveInfinity++;
+		} else if (value == Float.NEGATIVE_INFINITY) {
+			mNegativeInfinity++;
+		} else {
+			mSum += value;
+		}
+		return getAverage();
+	}
+
+	public double getSum() {
+		if (mNaN > 0 || (mPositiveInfinity > 0 && mNegativeInfinity > 0)) {
+			return Double.NaN;
+		} else if (mPositiveInfinity > 0) {
+			return Double.POSITIVE_INFINITY;
+		} else if (mNegativeInfinity > 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return mSum;
+	}
+
+	public float getAverage() {
+		if (mCount == 0) {
+			return Float.NaN;
+		}
+		return (float) (getSum() / mCount);
+	}
+
+	private void remove(float value) {
+		if (Float.isNaN(value)) {
+			mNaN--;
+		} else if (value == Float.POSITIVE_INFINITY) {
+			mPositiveInfinity--;
+		} else if (value == Float.NEGATIVE_INFINITY) {
+			mNegativeInfinity--;
+		} else {
+			mSum -= value;
+		}
+	}
+}
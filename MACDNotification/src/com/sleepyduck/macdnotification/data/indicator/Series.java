@@ -0,0 +1,24 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * A daily series that holds one column per {@link Indicator} of an {@link IndicatorRegistry},
+ * with the oldest day first.
+ */
+public interface Series {
+
+	/**
+	 * Returns the number of days in the series
+	 */
+	public int size();
+
+	/**
+	 * Returns the column of the indicator. Only the first {@link #size()} values are valid.
+	 */
+	public float[] getColumn(Indicator indicator);
+
+	/**
+	 * Returns the {@link PrefixSum} of the column of the indicator. Moving averages of the same
+	 * source share the same instance while the series is being calculated.
+	 */
+	public PrefixSum getPrefixSum(Indicator indicator);
+}
@@ -0,0 +1,41 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * Simple moving average. The first days use the days available.
+ */
+class SimpleMovingAverage extends Indicator {
+	private final int mDays;
+
+	SimpleMovingAverage(Indicator source, int days) {
+		super("SMA(" + source.getKey() + "," + days + ")", source);
+		if (days < 1) {
+			throw new IllegalArgumentException("Days must be positive: " + days);
+		}
+		mDays = days;
+	}
+
+	@Override
+	public void calculate(Series series, float[] dst) {
+		series.getPrefixSum(getInput(0)).average(mDays, dst);
+	}
+
+	@Override
+	public int getLookback(double tolerance) {
+		return super.getLookback(tolerance) + mDays - 1;
+	}
+
+	@Override
+	public Stepper newStepper(Series series) {
+		final RollingSum sum = new RollingSum(mDays);
+		final float[] src = series.getColumn(getInput(0));
+		for (int i = Math.max(0, series.size() - mDays); i < series.size(); i++) {
+			sum.add(src[i]);
+		}
+		return new Stepper() {
+			@Override
+			public float step(Series series, int i) {
+				return sum.add(series.getColumn(getInput(0))[i]);
+			}
+		};
+	}
+}
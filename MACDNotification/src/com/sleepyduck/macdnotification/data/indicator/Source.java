@@ -0,0 +1,26 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * A price column read from the quote source, such as Close
+ */
+class Source extends Indicator {
+
+	Source(String name) {
+		super(name);
+	}
+
+	@Override
+	public boolean isSource() {
+		return true;
+	}
+
+	@Override
+	public void calculate(Series series, float[] dst) {
+		throw new UnsupportedOperationException(getKey() + " is not calculated");
+	}
+
+	@Override
+	public Stepper newStepper(Series series) {
+		throw new UnsupportedOperationException(getKey() + " is not calculated");
+	}
+}
@@ -0,0 +1,39 @@
+package com.sleepyduck.macdnotification.data.indicator;
+
+/**
+ * The fast stochastic %K, where the close is within the range of the highest high and lowest low
+ * in percent
+ */
+class StochasticOscillator extends Indicator {
+
+	StochasticOscillator(Indicator close, Indicator highest, Indicator lowest) {
+		super("Stochastic(" + close.getKey() + "," + highest.getKey() + "," + lowest.getKey() + ")",
+				close, highest, lowest);
+	}
+
+	@Override
+	public void calculate(Series series, float[] dst) {
+		final float[] close = series.getColumn(getInput(0));
+		final float[] highest = series.getColumn(getInput(1));
+		final float[] lowest = series.getColumn(getInput(2));
+		final int size = series.size();
+		for (int i = 0; i < size; i++) {
+			dst[i] = calculate(close, highest, lowest, i);
+		}
+	}
+
+	@Override
+	public Stepper newStepper(Series series) {
+		return new Stepper() {
+			@Override
+			public float step(Series series, int i) {
+				return calculate(series.getColumn(getInput(0)), series.getColumn(getInput(1)),
+						series.getColumn(getInput(2)), i);
+			}
+		};
+	}
+
+	private static float calculate(float[] close, float[] highest, float[] lowest, int i) {
+		return (close[i] - lowest[i]) / (highest[i] - lowest[i]) * 100.0F;
+	}
+}
@@ -0,0 +1,124 @@
+package com.sleepyduck.macdnotification.util;
+
+/**
+ * Counts latencies in buckets that grow with the latency, like an HDR histogram, so that any
+ * percentile can be read with a relative error of at most 1/{@value #SUB_BUCKETS} in a fixed
+ * amount of memory. Latencies below {@value #SUB_BUCKETS} are counted exactly.
+ * <p>
+ * A histogram with a window halves its counts each time the count reaches the window, so that
+ * the percentiles follow the latencies of the most recent values.
+ */
+public class LatencyHistogram {
+	// Buckets per power of two, a power of two itself
+	private static final int SUB_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+	private static final int BUCKETS = index(Integer.MAX_VALUE) + 1;
+
+	private final long mWindow;
+	private final long[] mCounts = new long[BUCKETS];
+	private long mCount = 0;
+	private long mSum = 0;
+	private long mMax = 0;
+
+	/**
+	 * Creates a histogram that counts all values
+	 */
+	public LatencyHistogram() {
+		this(0);
+	}
+
+	/**
+	 * Creates a histogram that halves its counts when the count reaches the window, or counts all
+	 * values if it is 0
+	 */
+	public LatencyHistogram(long window) {
+		if (window < 0) {
+			throw new IllegalArgumentException("Window must not be negative: " + window);
+		}
+		mWindow = window;
+	}
+
+	/**
+	 * Counts the latency, negative latencies are counted as 0
+	 */
+	public synchronized void record(long latency) {
+		latency = Math.max(0, latency);
+		mCounts[index((int) Math.min(latency, Integer.MAX_VALUE))]++;
+		mCount++;
+		mSum += latency;
+		mMax = Math.max(mMax, latency);
+		if (mWindow > 0 && mCount >= mWindow) {
+			mSum /= 2;
+			mCount = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				mCounts[i] /= 2;
+				mCount += mCounts[i];
+			}
+		}
+	}
+
+	public synchronized long getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Returns the sum of the latencies, which is halved with the counts in a histogram with a
+	 * window
+	 */
+	public synchronized long getSum() {
+		return mSum;
+	}
+
+	/**
+	 * Returns the highest latency counted since the histogram was created or reset
+	 */
+	public synchronized long getMax() {
+		return mMax;
+	}
+
+	/**
+	 * Returns the latency that the percentile, 0 to 100, of the values are at or below, rounded
+	 * up to the end of its bucket but not above the highest latency, or 0 if there are no values
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (mCount == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(mCount * Math.min(Math.max(percentile, 0), 100) / 100));
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += mCounts[i];
+			if (count >= rank) {
+				return Math.min(highestValue(i), mMax);
+			}
+		}
+		return highestValue(BUCKETS - 1);
+	}
+
+	public synchronized void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			mCounts[i] = 0;
+		}
+		mCount = 0;
+		mSum = 0;
+		mMax = 0;
+	}
+
+	private static int index(int value) {
+		if (value < SUB_BUCKETS) {
+			return value;
+		}
+		// The top SUB_BUCKET_BITS + 1 bits of the value select the bucket
+		final int shift = 31 - Integer.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS * (shift + 1) + (value >> shift) - SUB_BUCKETS;
+	}
+
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,56 @@
+package com.sleepyduck.macdnotification.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * An input stream that keeps a copy of the first bytes read through it, so that the start of a
+ * stream that could not be parsed can be logged without holding all of it in memory
+ */
+public class PrefixRecordingInputStream extends FilterInputStream {
+	private final byte[] mPrefix;
+	private int mLength = 0;
+
+	public PrefixRecordingInputStream(InputStream in, int maxPrefixLength) {
+		super(in);
+		mPrefix = new byte[maxPrefixLength];
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b >= 0 && mLength < mPrefix.length) {
+			mPrefix[mLength++] = (byte) b;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		final int read = super.read(buffer, offset, count);
+		if (read > 0 && mLength < mPrefix.length) {
+			final int copy = Math.min(read, mPrefix.length - mLength);
+			System.arraycopy(buffer, offset, mPrefix, mLength, copy);
+			mLength += copy;
+		}
+		return read;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Returns the recorded bytes as UTF-8
+	 */
+	public String getPrefix() {
+		try {
+			return new String(mPrefix, 0, mLength, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
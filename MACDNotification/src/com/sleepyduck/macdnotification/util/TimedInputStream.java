@@ -0,0 +1,73 @@
+package com.sleepyduck.macdnotification.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that counts the bytes read through it and the time spent waiting for them, so
+ * that the time a streaming parser spends on parsing can be told apart from the time it spends
+ * on the download
+ */
+public class TimedInputStream extends FilterInputStream {
+	private long mCount = 0;
+	private long mReadNanos = 0;
+
+	public TimedInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		final long start = System.nanoTime();
+		try {
+			final int b = super.read();
+			if (b >= 0) {
+				mCount++;
+			}
+			return b;
+		} finally {
+			mReadNanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			final int read = super.read(buffer, offset, count);
+			if (read > 0) {
+				mCount += read;
+			}
+			return read;
+		} finally {
+			mReadNanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public long skip(long count) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			final long skipped = super.skip(count);
+			mCount += skipped;
+			return skipped;
+		} finally {
+			mReadNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes read or skipped
+	 */
+	public long getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Returns the time spent in the reads of the underlying stream
+	 */
+	public long getReadNanos() {
+		return mReadNanos;
+	}
+}
@@ -0,0 +1,47 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Backtracks the Rule #1 and MACD strategies over a series with calculated indicators
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BacktrackBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int bars;
+
+	private Symbol mSymbol;
+	private Backtrack mBacktrack;
+
+	@Setup
+	public void setUp() {
+		final StockDataList data = BenchmarkData.series(bars);
+		data.calculateIndicators();
+		mSymbol = new Symbol("ERIC-B.ST", null);
+		mSymbol.setStockData(data);
+		mBacktrack = new Backtrack();
+	}
+
+	@Benchmark
+	public Backtrack.Report run() {
+		return mBacktrack.run(mSymbol, 20000f, false, 13.5f, 0.15f, 0.5f);
+	}
+}
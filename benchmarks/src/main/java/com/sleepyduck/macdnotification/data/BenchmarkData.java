@@ -0,0 +1,96 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.Calendar;
+import java.util.Random;
+
+import com.sleepyduck.macdnotification.data.xml.XMLElement;
+
+/**
+ * Generates the input of the benchmarks. Prices are a random walk from a fixed seed, so every
+ * run measures the same data.
+ */
+final class BenchmarkData {
+	private static final long SEED = 42;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Returns the given number of weekdays, oldest first, ending today, on the form yyyyMMdd
+	 */
+	static int[] dates(int bars) {
+		final int[] dates = new int[bars];
+		final Calendar calendar = Calendar.getInstance();
+		for (int i = bars - 1; i >= 0; i--) {
+			while (calendar.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY
+					|| calendar.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY) {
+				calendar.add(Calendar.DAY_OF_MONTH, -1);
+			}
+			dates[i] = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+					+ calendar.get(Calendar.DAY_OF_MONTH);
+			calendar.add(Calendar.DAY_OF_MONTH, -1);
+		}
+		return dates;
+	}
+
+	/**
+	 * Returns a series of the given number of days, without calculated indicators
+	 */
+	static StockDataList series(int bars) {
+		final Random random = new Random(SEED);
+		final int[] dates = dates(bars);
+		final StockDataList data = new StockDataList(bars);
+		float close = 100.0f;
+		for (int i = 0; i < bars; i++) {
+			close *= (float) Math.exp(random.nextGaussian() * 0.02);
+			final float high = close * (1.0f + random.nextFloat() * 0.02f);
+			final float low = close * (1.0f - random.nextFloat() * 0.02f);
+			data.add(dates[i], close, high, low);
+		}
+		return data;
+	}
+
+	/**
+	 * Returns a yahoo.finance.historicaldata response like the one the fetcher parses, with the
+	 * newest quote first
+	 */
+	static String yqlPayload(String symbol, int bars) {
+		final StockDataList data = series(bars);
+		final StringBuilder sb = new StringBuilder(bars * 160);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<query xmlns:yahoo=\"http://www.yahooapis.com/v1/base.rng\" yahoo:count=\"").append(bars)
+				.append("\" yahoo:lang=\"en-US\"><results>");
+		for (int i = bars - 1; i >= 0; i--) {
+			final int date = data.getDate(i);
+			sb.append("<quote Symbol=\"").append(symbol).append("\">");
+			sb.append("<Date>").append(String.format("%04d-%02d-%02d", date / 10000, date / 100 % 100, date % 100))
+					.append("</Date>");
+			sb.append("<High>").append(data.get(i, StockEnum.High)).append("</High>");
+			sb.append("<Low>").append(data.get(i, StockEnum.Low)).append("</Low>");
+			sb.append("<Adj_Close>").append(data.get(i, StockEnum.Close)).append("</Adj_Close>");
+			sb.append("</quote>");
+		}
+		sb.append("</results></query>");
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a portfolio file like the one DataController saves, with the symbols spread over
+	 * ten groups
+	 */
+	static String portfolio(int symbols) {
+		final Group[] groups = new Group[10];
+		for (int i = 0; i < groups.length; i++) {
+			groups[i] = new Group("Group " + i);
+		}
+		for (int i = 0; i < symbols; i++) {
+			final Symbol symbol = groups[i % groups.length].addSymbol("SYM" + i + ".ST", i % 3 == 0 ? Float.valueOf(50.0f + i) : null);
+			symbol.setDisplayName("Symbol number " + i);
+		}
+		final XMLElement root = new XMLElement("Groups");
+		for (Group group : groups) {
+			root.addChild(group.toXMLElement());
+		}
+		return root.toString();
+	}
+}
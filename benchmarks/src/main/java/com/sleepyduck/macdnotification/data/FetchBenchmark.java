@@ -0,0 +1,89 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Refreshes a portfolio through the whole fetch pipeline, from a {@link StubQuoteServer} on the
+ * loopback interface instead of the network, on the pool of the {@link FetchExecutor} or on
+ * virtual threads. Virtual threads need Java 21 or later, and their requests in flight can be
+ * set with -jvmArgs -Dmacdnotification.virtualConcurrency=N.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FetchBenchmark {
+	private static final int BARS = 200;
+
+	@Param({"1000", "10000"})
+	public int symbols;
+
+	@Param({"0", "50"})
+	public long latencyMillis;
+
+	@Param({"false", "true"})
+	public boolean virtualThreads;
+
+	private StubQuoteServer mServer;
+	private QuoteSource mSource;
+
+	@Setup
+	public void setUp() throws Exception {
+		if (FetchExecutor.setVirtualThreads(virtualThreads) != virtualThreads) {
+			throw new IllegalStateException("Virtual threads are not supported by " + System.getProperty("java.version"));
+		}
+		mServer = new StubQuoteServer();
+		final String recording = BenchmarkData.yqlPayload("REC", BARS);
+		for (int i = 0; i < symbols; i++) {
+			mServer.put("SYM" + i + ".ST", recording);
+		}
+		mServer.setLatency(latencyMillis);
+		mServer.start();
+		mSource = mServer.createQuoteSource();
+	}
+
+	@TearDown
+	public void tearDown() {
+		mServer.stop();
+		FetchExecutor.setVirtualThreads(false);
+	}
+
+	@Benchmark
+	public Symbol[] refresh() throws InterruptedException {
+		final Symbol[] symbolList = new Symbol[symbols];
+		for (int i = 0; i < symbols; i++) {
+			symbolList[i] = new Symbol("SYM" + i + ".ST", null);
+		}
+		final CountDownLatch done = new CountDownLatch(symbols);
+		final StockDataFetcher fetcher = new StockDataFetcher(new StockDataFetcher.StockDataListener() {
+			@Override
+			public void onMessage(String message) {
+			}
+
+			@Override
+			public void onCalculationComplete(Symbol symbol) {
+				done.countDown();
+			}
+		});
+		fetcher.setQuoteSource(mSource);
+		fetcher.execute(symbolList);
+		done.await();
+		return symbolList;
+	}
+}
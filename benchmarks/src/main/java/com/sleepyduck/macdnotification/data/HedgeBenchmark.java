@@ -0,0 +1,71 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Refreshes a portfolio from a {@link StubQuoteServer} where a few responses are much slower than
+ * the rest, with and without hedged requests
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HedgeBenchmark {
+	private static final int BARS = 200;
+	private static final int SYMBOLS = 1000;
+	private static final long LATENCY_MILLIS = 20;
+	private static final double TAIL_FRACTION = 0.05;
+	private static final long TAIL_LATENCY_MILLIS = 2000;
+
+	@Param({"false", "true"})
+	public boolean hedging;
+
+	private StubQuoteServer mServer;
+	private YqlQuoteSource mSource;
+
+	@Setup
+	public void setUp() throws Exception {
+		mServer = new StubQuoteServer();
+		final String recording = BenchmarkData.yqlPayload("REC", BARS);
+		for (int i = 0; i < SYMBOLS; i++) {
+			mServer.put("SYM" + i + ".ST", recording);
+		}
+		mServer.setLatency(LATENCY_MILLIS);
+		mServer.setTailLatency(TAIL_FRACTION, TAIL_LATENCY_MILLIS);
+		mServer.start();
+		mSource = new YqlQuoteSource(mServer.getUrl());
+		mSource.setHedging(hedging);
+	}
+
+	@TearDown
+	public void tearDown() {
+		mServer.stop();
+	}
+
+	@Benchmark
+	public List<Symbol> refresh() throws Exception {
+		final Symbol[] symbolList = new Symbol[SYMBOLS];
+		for (int i = 0; i < SYMBOLS; i++) {
+			symbolList[i] = new Symbol("SYM" + i + ".ST", null);
+		}
+		final StockDataFetcher fetcher = new StockDataFetcher(null);
+		fetcher.setQuoteSource(mSource);
+		return fetcher.fetch(symbolList).get();
+	}
+}
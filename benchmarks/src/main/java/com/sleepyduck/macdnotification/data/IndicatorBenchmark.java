@@ -0,0 +1,53 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calculates all indicators of a series
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IndicatorBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int bars;
+
+	private StockDataList mData;
+	private float mFirstClose;
+
+	@Setup
+	public void setUp() {
+		mData = BenchmarkData.series(bars);
+		mFirstClose = mData.get(0, StockEnum.Close);
+	}
+
+	@Benchmark
+	public StockDataList calculateIndicators() {
+		// Setting a source value discards the indicators calculated by the previous invocation
+		mData.set(0, StockEnum.Close, mFirstClose);
+		mData.calculateIndicators();
+		return mData;
+	}
+
+	@Benchmark
+	public float[] calculateMACD() {
+		mData.set(0, StockEnum.Close, mFirstClose);
+		return mData.getColumn(StockEnum.MACD_12_26);
+	}
+}
@@ -0,0 +1,47 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses a historical data response into a series, from a stream like the fetcher does
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int bars;
+
+	private YqlQuoteSource mSource;
+	private byte[] mPayload;
+
+	@Setup
+	public void setUp() throws UnsupportedEncodingException {
+		mSource = new YqlQuoteSource();
+		mPayload = BenchmarkData.yqlPayload("ERIC-B.ST", bars).getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public Map<String, StockDataList> parseData() {
+		return mSource.parseData(new ByteArrayInputStream(mPayload));
+	}
+}
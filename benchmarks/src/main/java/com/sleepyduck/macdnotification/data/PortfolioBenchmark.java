@@ -0,0 +1,54 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sleepyduck.macdnotification.data.xml.XMLElement;
+import com.sleepyduck.macdnotification.data.xml.XMLElementFactory;
+
+/**
+ * Reads and writes the portfolio file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PortfolioBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int symbols;
+
+	private String mXml;
+	private XMLElement mRoot;
+
+	@Setup
+	public void setUp() throws Exception {
+		mXml = BenchmarkData.portfolio(symbols);
+		mRoot = XMLElementFactory.BuildFromReader(new StringReader(mXml)).get(0);
+	}
+
+	@Benchmark
+	public List<XMLElement> buildFromReader() throws Exception {
+		return XMLElementFactory.BuildFromReader(new StringReader(mXml));
+	}
+
+	@Benchmark
+	public String toXMLString() {
+		return mRoot.toString();
+	}
+}
@@ -0,0 +1,92 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rescans a large portfolio of stored symbols with a {@link BatchCalculator}, as when the app
+ * loads the stored days: reading every symbol from a {@link BarStore} and calculating all of its
+ * indicators, or only calculating them again
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RescanBenchmark {
+
+	@Param({"5000"})
+	public int symbols;
+
+	@Param({"250", "1000"})
+	public int bars;
+
+	@Param({"1", "2", "4"})
+	public int threads;
+
+	private File mDirectory;
+	private BarStore mStore;
+	private StockDataList[] mRows;
+	private float mFirstClose;
+
+	@Setup
+	public void setUp() throws IOException {
+		mDirectory = Files.createTempDirectory("bars").toFile();
+		mStore = new BarStore(mDirectory);
+		final StockDataList data = BenchmarkData.series(bars);
+		mFirstClose = data.get(0, StockEnum.Close);
+		mRows = new StockDataList[symbols];
+		for (int i = 0; i < symbols; i++) {
+			mStore.write(symbol(i), data);
+			mRows[i] = mStore.read(symbol(i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (File file : mDirectory.listFiles()) {
+			file.delete();
+		}
+		mDirectory.delete();
+	}
+
+	private static String symbol(int i) {
+		return "SYM" + i + ".ST";
+	}
+
+	@Benchmark
+	public StockDataList[] readAndCalculate() throws InterruptedException {
+		final StockDataList[] rows = new StockDataList[symbols];
+		for (int i = 0; i < symbols; i++) {
+			rows[i] = mStore.read(symbol(i));
+		}
+		new BatchCalculator(rows, threads).calculateIndicators();
+		return rows;
+	}
+
+	@Benchmark
+	public StockDataList[] calculate() throws InterruptedException {
+		// Setting a source value discards the indicators calculated by the previous invocation
+		for (StockDataList row : mRows) {
+			row.set(0, StockEnum.Close, mFirstClose);
+		}
+		new BatchCalculator(mRows, threads).calculateIndicators();
+		return mRows;
+	}
+}
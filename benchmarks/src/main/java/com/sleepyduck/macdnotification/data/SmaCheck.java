@@ -0,0 +1,150 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.util.Random;
+
+/**
+ * Compares the simple moving averages of {@link StockDataList} with the float sums they used to
+ * be calculated with, which added the window from the newest day to the oldest. It reports the
+ * largest difference in ulps, and the days where the rules that compare an average, the close at
+ * or above its SMA and the slow stochastic at or above its signal, come out differently. Exits
+ * with 1 if an average is more than {@value #MAX_ULPS} ulps off, if a rule changes on a day where
+ * its two sides are more than {@value #MAX_CHANGE_ULPS} ulp apart, or if appending days gives
+ * other results than calculating them.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.sleepyduck.macdnotification.data.SmaCheck
+ * </pre>
+ */
+public final class SmaCheck {
+	private static final int MAX_ULPS = 4;
+	private static final int MAX_CHANGE_ULPS = 1;
+	private static final int SERIES = 2000;
+	private static final int BARS = 1000;
+
+	private enum Kind {
+		RANDOM_WALK, CENTS, FLAT_DAYS
+	}
+
+	private long mValues = 0;
+	private long mDiffering = 0;
+	private int mMaxUlps = 0;
+	private long mCloseChanges = 0;
+	private long mStochasticChanges = 0;
+	private int mMaxChangeUlps = 0;
+	private long mAppendDiffering = 0;
+
+	private SmaCheck() {
+	}
+
+	public static void main(String[] args) {
+		boolean ok = true;
+		for (Kind kind : Kind.values()) {
+			final SmaCheck check = new SmaCheck();
+			final Random random = new Random(kind.ordinal());
+			for (int s = 0; s < SERIES; s++) {
+				check.check(series(kind, random));
+			}
+			System.out.println(kind + ": " + check.mDiffering + " of " + check.mValues + " averages differ, by at most "
+					+ check.mMaxUlps + " ulps. The close rule changes on " + check.mCloseChanges
+					+ " days and the stochastic rule on " + check.mStochasticChanges + ", where the two sides are at most "
+					+ check.mMaxChangeUlps + " ulps apart. Appending differs on " + check.mAppendDiffering + " values.");
+			ok &= check.mMaxUlps <= MAX_ULPS && check.mMaxChangeUlps <= MAX_CHANGE_ULPS && check.mAppendDiffering == 0;
+		}
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static StockDataList series(Kind kind, Random random) {
+		final int[] dates = BenchmarkData.dates(BARS);
+		final StockDataList data = new StockDataList(BARS);
+		float close = (float) Math.exp(random.nextDouble() * 9 - 2);
+		for (int i = 0; i < BARS; i++) {
+			if (kind != Kind.FLAT_DAYS || random.nextInt(10) >= 7) {
+				close = Math.max(0.01f, close * (float) Math.exp(random.nextGaussian() * 0.02));
+			}
+			if (kind != Kind.RANDOM_WALK) {
+				close = Math.round(close * 100) / 100.0f;
+			}
+			final float high = close * (1.0f + random.nextFloat() * 0.02f);
+			final float low = close * (1.0f - random.nextFloat() * 0.02f);
+			data.add(dates[i], close, high, low);
+		}
+		return data;
+	}
+
+	private void check(StockDataList data) {
+		final int size = data.size();
+		final float[] close = data.getColumn(StockEnum.Close);
+		final float[] sma = data.getColumn(StockEnum.Close_SMA_10);
+		final float[] slow = data.getColumn(StockEnum.Stochastic_14_5_Slow);
+		final float[] signal = data.getColumn(StockEnum.Stochastic_Signal_14_5_Slow);
+		final float[] floatSma = floatAverage(close, size, 10);
+		final float[] floatSlow = floatAverage(data.getColumn(StockEnum.Stochastic_14_5), size, 5);
+		final float[] floatSignal = floatAverage(floatSlow, size, 5);
+		for (int i = 0; i < size; i++) {
+			compare(sma[i], floatSma[i]);
+			compare(slow[i], floatSlow[i]);
+			compare(signal[i], floatSignal[i]);
+			if ((sma[i] <= close[i]) != (floatSma[i] <= close[i])) {
+				mCloseChanges++;
+				mMaxChangeUlps = Math.max(mMaxChangeUlps, ulps(sma[i], close[i]));
+			}
+			if ((signal[i] <= slow[i]) != (floatSignal[i] <= floatSlow[i])) {
+				mStochasticChanges++;
+				mMaxChangeUlps = Math.max(mMaxChangeUlps, ulps(signal[i], slow[i]));
+			}
+		}
+
+		// Half of the days calculated, the rest appended
+		final StockDataList appended = new StockDataList(size);
+		for (int i = 0; i < size / 2; i++) {
+			appended.add(data.getDate(i), close[i], data.get(i, StockEnum.High), data.get(i, StockEnum.Low));
+		}
+		appended.calculateIndicators();
+		for (int i = size / 2; i < size; i++) {
+			appended.append(data.getDate(i), close[i], data.get(i, StockEnum.High), data.get(i, StockEnum.Low));
+		}
+		for (StockEnum e : StockEnum.values()) {
+			for (int i = 0; i < size; i++) {
+				if (Float.floatToIntBits(appended.get(i, e)) != Float.floatToIntBits(data.get(i, e))) {
+					mAppendDiffering++;
+				}
+			}
+		}
+	}
+
+	private void compare(float value, float expected) {
+		if (Float.isNaN(value) && Float.isNaN(expected)) {
+			return;
+		}
+		mValues++;
+		if (value != expected) {
+			mDiffering++;
+			mMaxUlps = Math.max(mMaxUlps, ulps(value, expected));
+		}
+	}
+
+	/**
+	 * Returns the number of floats between a and b, which must have the same sign
+	 */
+	private static int ulps(float a, float b) {
+		return Math.abs(Float.floatToIntBits(a) - Float.floatToIntBits(b));
+	}
+
+	/**
+	 * The averages as they used to be calculated, each window added as floats from the newest day
+	 */
+	private static float[] floatAverage(float[] src, int size, int length) {
+		final float[] dst = new float[size];
+		for (int i = 0; i < size; i++) {
+			float sum = 0;
+			int count = 0;
+			for (int j = i; j >= 0 && count < length; j--) {
+				sum += src[j];
+				count++;
+			}
+			dst[i] = sum / count;
+		}
+		return dst;
+	}
+}
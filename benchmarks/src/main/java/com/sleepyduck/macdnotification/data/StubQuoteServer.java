@@ -0,0 +1,364 @@
+package com.sleepyduck.macdnotification.data;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.util.Log;
+
+/**
+ * A local HTTP server that answers the queries of a {@link YqlQuoteSource} with recorded
+ * responses, after a configurable latency. It makes it possible to run the whole fetch pipeline,
+ * such as a refresh of ten thousand symbols, on a machine without network:
+ *
+ * <pre>
+ * StubQuoteServer server = new StubQuoteServer();
+ * server.load(recordingsDirectory);
+ * server.setLatency(200);
+ * server.start();
+ * fetcher.setQuoteSource(server.createQuoteSource());
+ * </pre>
+ *
+ * A recording is a historical data response of the service. Its quotes are replayed for the
+ * symbol it was recorded or put for, limited to the dates of each query, so a batch of symbols
+ * and a fetch of only the newest days are answered like by the service.
+ */
+public class StubQuoteServer {
+	private static final String LOG_TAG = StubQuoteServer.class.getSimpleName();
+	private static final String PATH = "/v1/public/yql";
+	private static final String RECORDING_SUFFIX = ".xml";
+
+	private static final Pattern QUOTE = Pattern.compile("<quote\\b[^>]*>(.*?)</quote>",
+			Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+	private static final Pattern QUOTE_DATE = Pattern.compile("<Date>(\\d{4})-(\\d{2})-(\\d{2})</Date>",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern START_DATE = Pattern.compile("startDate\\s*=\\s*\"(\\d{4})-(\\d{2})-(\\d{2})\"",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern END_DATE = Pattern.compile("endDate\\s*=\\s*\"(\\d{4})-(\\d{2})-(\\d{2})\"",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern SYMBOL_LIST = Pattern.compile("symbol\\s+in\\s*\\(([^)]*)\\)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern SYMBOL = Pattern.compile("symbol\\s*=\\s*\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+	private static final Pattern QUOTED = Pattern.compile("\"([^\"]*)\"");
+
+	// Recorded quotes by symbol key, newest first like the service
+	private final Map<String, List<Quote>> mQuotes = new HashMap<String, List<Quote>>();
+	private final Map<String, String> mNames = new HashMap<String, String>();
+	private final AtomicInteger mRequestCount = new AtomicInteger(0);
+	private volatile long mLatencyMillis = 0;
+	private volatile double mTailFraction = 0;
+	private volatile long mTailLatencyMillis = 0;
+	private ServerSocket mServerSocket;
+
+	/**
+	 * Puts the recordings of a directory, one historical data response per symbol named
+	 * SYMBOL.xml, see {@link BarStore#getFileName(String)}
+	 */
+	public void load(File directory) throws IOException {
+		final File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException(directory + " is not a directory");
+		}
+		for (File file : files) {
+			final String name = file.getName();
+			if (name.endsWith(RECORDING_SUFFIX)) {
+				put(URLDecoder.decode(name.substring(0, name.length() - RECORDING_SUFFIX.length()), "UTF-8"),
+						read(file));
+			}
+		}
+	}
+
+	/**
+	 * Puts a recorded historical data response for the symbol. The quotes are replayed as quotes
+	 * of the symbol, whichever symbol they were recorded for.
+	 */
+	public synchronized void put(String symbol, String response) {
+		final List<Quote> quotes = new ArrayList<Quote>();
+		final Matcher matcher = QUOTE.matcher(response);
+		while (matcher.find()) {
+			final Matcher date = QUOTE_DATE.matcher(matcher.group(1));
+			if (date.find()) {
+				quotes.add(new Quote(toDate(date), matcher.group(1)));
+			}
+		}
+		mQuotes.put(StockDataFetcher.getKey(symbol), quotes);
+	}
+
+	public synchronized void putName(String symbol, String name) {
+		mNames.put(StockDataFetcher.getKey(symbol), name);
+	}
+
+	/**
+	 * Sets the time the server waits before each response
+	 */
+	public void setLatency(long millis) {
+		mLatencyMillis = millis;
+	}
+
+	/**
+	 * Makes a random fraction of the responses wait the tail latency instead, like a service with
+	 * a few slow responses
+	 */
+	public void setTailLatency(double fraction, long millis) {
+		mTailFraction = fraction;
+		mTailLatencyMillis = millis;
+	}
+
+	/**
+	 * Returns the number of queries answered since the server was created
+	 */
+	public int getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	/**
+	 * Starts the server on a free port of the loopback interface
+	 *
+	 * @return the port
+	 */
+	public synchronized int start() throws IOException {
+		if (mServerSocket != null) {
+			throw new IllegalStateException("Already started");
+		}
+		final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		mServerSocket = serverSocket;
+		final Thread acceptor = new Thread("StubQuoteServer") {
+			@Override
+			public void run() {
+				accept(serverSocket);
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		Log.d(LOG_TAG, "Started on port " + serverSocket.getLocalPort());
+		return serverSocket.getLocalPort();
+	}
+
+	public synchronized void stop() {
+		if (mServerSocket != null) {
+			try {
+				mServerSocket.close();
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "", e);
+			}
+			mServerSocket = null;
+		}
+	}
+
+	/**
+	 * Returns the url of the YQL service of the server
+	 */
+	public synchronized String getUrl() {
+		if (mServerSocket == null) {
+			throw new IllegalStateException("Not started");
+		}
+		return "http://127.0.0.1:" + mServerSocket.getLocalPort() + PATH;
+	}
+
+	/**
+	 * Returns a source that fetches from the server
+	 */
+	public QuoteSource createQuoteSource() {
+		return new YqlQuoteSource(getUrl());
+	}
+
+	private void accept(ServerSocket serverSocket) {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				final Thread thread = new Thread("StubQuoteServer " + socket.getPort()) {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				};
+				thread.setDaemon(true);
+				thread.start();
+			} catch (SocketException e) {
+				// Closed by stop()
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "", e);
+			}
+		}
+	}
+
+	/**
+	 * Answers the requests of a connection until the client closes it
+	 */
+	private void serve(Socket socket) {
+		try {
+			final InputStream in = new BufferedInputStream(socket.getInputStream());
+			final OutputStream out = socket.getOutputStream();
+			String head;
+			while ((head = readHead(in)) != null) {
+				final String requestLine = head.substring(0, Math.max(head.indexOf("\r\n"), 0));
+				final String[] parts = requestLine.split(" ");
+				int status = 200;
+				byte[] body;
+				if (parts.length < 2 || !parts[0].equals("GET") || !parts[1].startsWith(PATH + "?")) {
+					status = 404;
+					body = new byte[0];
+				} else {
+					body = answer(getParameter(parts[1], "q")).getBytes("UTF-8");
+				}
+				final long latency = Math.random() < mTailFraction ? mTailLatencyMillis : mLatencyMillis;
+				if (latency > 0) {
+					Thread.sleep(latency);
+				}
+				mRequestCount.incrementAndGet();
+				out.write(("HTTP/1.1 " + status + (status == 200 ? " OK" : " Not Found") + "\r\n"
+						+ "Content-Type: text/xml; charset=UTF-8\r\n"
+						+ "Content-Length: " + body.length + "\r\n\r\n").getBytes("US-ASCII"));
+				out.write(body);
+				out.flush();
+				if (head.toLowerCase(Locale.US).contains("\r\nconnection: close")) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the request line and headers of the next request, or null if the connection is
+	 * closed
+	 */
+	private static String readHead(InputStream in) throws IOException {
+		final StringBuilder head = new StringBuilder();
+		int c;
+		while ((c = in.read()) >= 0) {
+			head.append((char) c);
+			final int length = head.length();
+			if (length >= 4 && head.charAt(length - 1) == '\n' && head.charAt(length - 2) == '\r'
+					&& head.charAt(length - 3) == '\n' && head.charAt(length - 4) == '\r') {
+				return head.toString();
+			}
+		}
+		return null;
+	}
+
+	private static String getParameter(String target, String name) throws IOException {
+		for (String parameter : target.substring(target.indexOf('?') + 1).split("&")) {
+			if (parameter.startsWith(name + "=")) {
+				return URLDecoder.decode(parameter.substring(name.length() + 1), "UTF-8");
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Returns the response to the query, with the quotes of the symbols between the dates or
+	 * their names
+	 */
+	private synchronized String answer(String query) {
+		final StringBuilder results = new StringBuilder();
+		int count = 0;
+		if (query.toLowerCase(Locale.US).contains("yahoo.finance.historicaldata")) {
+			final Matcher start = START_DATE.matcher(query);
+			final Matcher end = END_DATE.matcher(query);
+			final int startDate = start.find() ? toDate(start) : 0;
+			final int endDate = end.find() ? toDate(end) : Integer.MAX_VALUE;
+			for (String symbol : getSymbols(query)) {
+				final List<Quote> quotes = mQuotes.get(StockDataFetcher.getKey(symbol));
+				if (quotes == null) {
+					continue;
+				}
+				final String escaped = symbol.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+				for (Quote quote : quotes) {
+					if (quote.mDate >= startDate && quote.mDate <= endDate) {
+						results.append("<quote Symbol=\"").append(escaped).append("\">").append(quote.mElements)
+								.append("</quote>");
+						count++;
+					}
+				}
+			}
+		} else {
+			for (String symbol : getSymbols(query)) {
+				final String name = mNames.get(StockDataFetcher.getKey(symbol));
+				final String escaped = symbol.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+				results.append("<quote symbol=\"").append(escaped).append("\"><Symbol>").append(escaped)
+						.append("</Symbol><Name>")
+						.append(name != null ? name.replace("&", "&amp;").replace("<", "&lt;") : "")
+						.append("</Name></quote>");
+				count++;
+			}
+		}
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<query xmlns:yahoo=\"http://www.yahooapis.com/v1/base.rng\" yahoo:count=\"" + count
+				+ "\" yahoo:lang=\"en-US\"><results>" + results + "</results></query>";
+	}
+
+	private static List<String> getSymbols(String query) {
+		final List<String> symbols = new ArrayList<String>();
+		final Matcher list = SYMBOL_LIST.matcher(query);
+		if (list.find()) {
+			final Matcher quoted = QUOTED.matcher(list.group(1));
+			while (quoted.find()) {
+				symbols.add(quoted.group(1));
+			}
+		} else {
+			final Matcher symbol = SYMBOL.matcher(query);
+			if (symbol.find()) {
+				symbols.add(symbol.group(1));
+			}
+		}
+		return symbols;
+	}
+
+	private static int toDate(Matcher matcher) {
+		return Integer.parseInt(matcher.group(1)) * 10000 + Integer.parseInt(matcher.group(2)) * 100
+				+ Integer.parseInt(matcher.group(3));
+	}
+
+	private static String read(File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			final byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	private static final class Quote {
+		private final int mDate;
+		// The elements inside the quote element
+		private final String mElements;
+
+		private Quote(int date, String elements) {
+			mDate = date;
+			mElements = elements;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package android.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+
+/**
+ * Stand-in for the Android context, with the methods used by the data package
+ */
+public abstract class Context {
+	public static final int MODE_PRIVATE = 0;
+
+	public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+	public abstract String getPackageName();
+
+	public abstract File getFilesDir();
+
+	public abstract File getExternalFilesDir(String type);
+
+	public abstract FileInputStream openFileInput(String name) throws FileNotFoundException;
+}
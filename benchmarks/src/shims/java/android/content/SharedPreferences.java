@@ -0,0 +1,24 @@
+package android.content;
+
+/**
+ * Stand-in for the Android shared preferences, with the methods used by the data package
+ */
+public interface SharedPreferences {
+
+	public int getInt(String key, int defValue);
+
+	public String getString(String key, String defValue);
+
+	public Editor edit();
+
+	public interface Editor {
+
+		public Editor clear();
+
+		public Editor putInt(String key, int value);
+
+		public Editor putString(String key, String value);
+
+		public boolean commit();
+	}
+}
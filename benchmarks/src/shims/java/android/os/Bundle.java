@@ -0,0 +1,24 @@
+package android.os;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the Android bundle, only the serializable values
+ */
+public class Bundle {
+	private final Map<String, Serializable> mValues = new HashMap<String, Serializable>();
+
+	public boolean containsKey(String key) {
+		return mValues.containsKey(key);
+	}
+
+	public Serializable getSerializable(String key) {
+		return mValues.get(key);
+	}
+
+	public void putSerializable(String key, Serializable value) {
+		mValues.put(key, value);
+	}
+}
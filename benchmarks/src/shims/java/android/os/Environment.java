@@ -0,0 +1,19 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * Stand-in for the Android environment, with the external storage in the temporary directory
+ */
+public class Environment {
+	public static final String MEDIA_MOUNTED = "mounted";
+	public static final String MEDIA_MOUNTED_READ_ONLY = "mounted_ro";
+
+	public static File getExternalStorageDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	public static String getExternalStorageState() {
+		return MEDIA_MOUNTED;
+	}
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Stand-in for the Android handler, which runs posted tasks on the calling thread
+ */
+public class Handler {
+
+	public boolean post(Runnable r) {
+		r.run();
+		return true;
+	}
+
+	public boolean postDelayed(Runnable r, long delayMillis) {
+		return post(r);
+	}
+}